@@ -0,0 +1,107 @@
+package io.aionios.benchmark;
+
+import io.aionios.AioniosApplication;
+import io.aionios.model.Capsule;
+import io.aionios.repository.CapsuleRepository;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Starts the application for a benchmark, without the web server unless one is
+ * asked for, on a fresh in-memory H2 database and the mock blockchain and IPFS
+ * services, with the background jobs that would compete with the measured code
+ * turned off.
+ */
+final class BenchmarkApplication {
+
+    static final String CREATOR_PREFIX = "0xC0FFEE";
+    static final String RECIPIENT_PREFIX = "0xBEEF";
+
+    private static final int SAVE_CHUNK_SIZE = 1000;
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * @param overrides Properties to set on top of the benchmark defaults
+     * @return The started application context
+     */
+    static ConfigurableApplicationContext start(Map<String, Object> overrides) {
+        return start(overrides, WebApplicationType.NONE);
+    }
+
+    /**
+     * @param overrides Properties to set on top of the benchmark defaults
+     * @param webApplicationType {@link WebApplicationType#SERVLET} to serve the API on a random port
+     * @return The started application context
+     */
+    static ConfigurableApplicationContext start(Map<String, Object> overrides, WebApplicationType webApplicationType) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", "jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("logging.level.root", "WARN");
+        properties.put("capsule.scheduler.cron", "-");
+        properties.put("capsule.wheel.enabled", "false");
+        properties.put("chain.indexer.enabled", "false");
+        properties.put("ipfs.cache.enabled", "false");
+        properties.put("server.port", "0");
+        properties.putAll(overrides);
+
+        return new SpringApplicationBuilder(AioniosApplication.class)
+                .web(webApplicationType)
+                .properties(properties)
+                .run();
+    }
+
+    /**
+     * Saves TIME capsules spread over creator and recipient addresses, a
+     * share of them already due
+     *
+     * @param repository The capsule repository
+     * @param count The number of capsules to save
+     * @param perAddress The number of capsules per creator and per recipient
+     * @param dueEvery Every how many capsules one is due
+     */
+    static void seed(CapsuleRepository repository, int count, int perAddress, int dueEvery) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Capsule> chunk = new ArrayList<>(SAVE_CHUNK_SIZE);
+        for (int i = 0; i < count; i++) {
+            int address = i / perAddress;
+            chunk.add(Capsule.builder()
+                    .title("Capsule " + i)
+                    .description("Benchmark capsule " + i)
+                    .blockchainId("bench_" + i)
+                    .creatorAddress(creator(address))
+                    .recipientAddress(recipient(address))
+                    .status(Capsule.CapsuleStatus.SEALED)
+                    .conditionType(Capsule.ConditionType.TIME)
+                    .openDate(i % dueEvery == 0 ? now.minusDays(1) : now.plusYears(1))
+                    .viewCount(i % 997)
+                    .shareCount(i % 101)
+                    .subscriptionCount(i % 53)
+                    .featured(false)
+                    .build());
+            if (chunk.size() == SAVE_CHUNK_SIZE) {
+                repository.saveAll(chunk);
+                chunk.clear();
+            }
+        }
+        repository.saveAll(chunk);
+    }
+
+    static String creator(int address) {
+        return CREATOR_PREFIX + String.format("%034x", address);
+    }
+
+    static String recipient(int address) {
+        return RECIPIENT_PREFIX + String.format("%036x", address);
+    }
+}
@@ -0,0 +1,89 @@
+package io.aionios.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.aionios.dto.CapsuleSummary;
+import io.aionios.model.Capsule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON rendering of list endpoint responses: full capsule entities, as the
+ * address lists return them, against the summaries the explore lists return.
+ * Uses an object mapper configured like the application's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CapsuleJsonBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int listSize;
+
+    @Param({"200", "2000"})
+    public int descriptionLength;
+
+    private ObjectMapper objectMapper;
+    private List<Capsule> capsules;
+    private List<CapsuleSummary> summaries;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        String description = "x".repeat(descriptionLength);
+        LocalDateTime now = LocalDateTime.now();
+
+        capsules = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            Capsule capsule = Capsule.builder()
+                    .id((long) i)
+                    .title("Capsule " + i)
+                    .description(description)
+                    .blockchainId("mock_" + i)
+                    .creatorAddress(BenchmarkApplication.creator(i))
+                    .recipientAddress(BenchmarkApplication.recipient(i))
+                    .status(Capsule.CapsuleStatus.SEALED)
+                    .createdAt(now)
+                    .openDate(now.plusYears(1))
+                    .conditionType(Capsule.ConditionType.TIME)
+                    .conditionData("{\"openDate\":\"" + now.plusYears(1) + "\"}")
+                    .ipfsHash("Qm" + "a".repeat(44))
+                    .viewCount(i)
+                    .shareCount(i)
+                    .subscriptionCount(i)
+                    .featured(false)
+                    .build();
+            capsules.add(capsule);
+        }
+        summaries = capsules.stream().map(CapsuleSummary::of).toList();
+    }
+
+    @Benchmark
+    public byte[] capsules() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(capsules);
+    }
+
+    @Benchmark
+    public byte[] summaries() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(summaries);
+    }
+}
@@ -0,0 +1,126 @@
+package io.aionios.benchmark;
+
+import io.aionios.dto.CapsuleSummary;
+import io.aionios.model.Capsule;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.service.CapsuleService;
+import io.aionios.service.LeaderboardService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths and the due capsule sweep against H2 holding different numbers
+ * of capsules. Each address owns {@code capsulesPerAddress} capsules as
+ * creator and as recipient, and one capsule in {@code dueEvery} is due.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CapsuleQueryBenchmark {
+
+    @Param({"10000", "100000"})
+    public int capsuleCount;
+
+    @Param({"100"})
+    public int capsulesPerAddress;
+
+    @Param({"10"})
+    public int dueEvery;
+
+    private ConfigurableApplicationContext context;
+    private CapsuleService capsuleService;
+    private CapsuleRepository capsuleRepository;
+    private LeaderboardService leaderboardService;
+    private JdbcTemplate jdbcTemplate;
+    private int addressCount;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start(Map.of());
+        capsuleService = context.getBean(CapsuleService.class);
+        capsuleRepository = context.getBean(CapsuleRepository.class);
+        leaderboardService = context.getBean(LeaderboardService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        BenchmarkApplication.seed(capsuleRepository, capsuleCount, capsulesPerAddress, dueEvery);
+        addressCount = Math.max(1, capsuleCount / capsulesPerAddress);
+        leaderboardService.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Capsule> capsulesByAddress() {
+        return capsuleService.getCapsulesByAddress(randomAddress());
+    }
+
+    @Benchmark
+    public byte[] capsuleSummariesByAddress() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        capsuleService.writeCapsuleSummaries(CapsuleService.AddressRole.ANY, randomAddress(), null, 50, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<CapsuleSummary> popularSummariesQuery() {
+        return capsuleRepository.findPopularSummaries(PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public byte[] popularLeaderboardJson() {
+        return leaderboardService.getTopCapsulesJson(LeaderboardService.Board.POPULAR, 20);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 20)
+    public int processCapsulesDueForOpening(DueCapsules due) {
+        return capsuleService.processCapsulesDueForOpening();
+    }
+
+    private String randomAddress() {
+        return BenchmarkApplication.creator(ThreadLocalRandom.current().nextInt(addressCount));
+    }
+
+    /**
+     * Puts the capsules marked ready by the previous sweep back to sealed, so
+     * every sweep has the same work to do
+     */
+    @State(Scope.Benchmark)
+    public static class DueCapsules {
+
+        @Setup(Level.Invocation)
+        public void reseal(CapsuleQueryBenchmark benchmark) {
+            benchmark.jdbcTemplate.update("UPDATE capsules SET status = ? WHERE status = ?",
+                    Capsule.CapsuleStatus.SEALED.name(), Capsule.CapsuleStatus.READY_TO_OPEN.name());
+        }
+    }
+}
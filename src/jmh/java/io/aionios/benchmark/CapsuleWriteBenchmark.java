@@ -0,0 +1,152 @@
+package io.aionios.benchmark;
+
+import io.aionios.blockchain.BlockchainService;
+import io.aionios.blockchain.CapsuleSubmission;
+import io.aionios.model.Capsule;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.service.CapsuleService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creating and opening capsules through {@link CapsuleService}, with content
+ * of different sizes and with blockchain batching on and off. Runs with
+ * several threads, since batching only pays off for concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class CapsuleWriteBenchmark {
+
+    @Param({"0", "4096", "1048576"})
+    public int payloadBytes;
+
+    @Param({"true", "false"})
+    public boolean batching;
+
+    private ConfigurableApplicationContext context;
+    private CapsuleService capsuleService;
+    private CapsuleRepository capsuleRepository;
+    private BlockchainService blockchainService;
+    private byte[] payload;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start(Map.of("blockchain.batch.enabled", String.valueOf(batching)));
+        capsuleService = context.getBean(CapsuleService.class);
+        capsuleRepository = context.getBean(CapsuleRepository.class);
+        blockchainService = context.getBean(BlockchainService.class);
+        payload = new byte[payloadBytes];
+        ThreadLocalRandom.current().nextBytes(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Capsule createCapsule() {
+        MockMultipartFile content = null;
+        if (payloadBytes > 0) {
+            // A distinct first chunk per call, so the content store can't deduplicate it away
+            byte[] unique = payload.clone();
+            if (unique.length >= Long.BYTES) {
+                ByteBuffer.wrap(unique).putLong(0, sequence.incrementAndGet());
+            }
+            content = new MockMultipartFile("content", "content.bin", "application/octet-stream", unique);
+        }
+        return capsuleService.createCapsule(newCapsule(LocalDateTime.now().plusYears(1)), content);
+    }
+
+    @Benchmark
+    public Optional<Capsule> openCapsule(OpenableCapsules openable) {
+        Capsule capsule = openable.capsules.poll();
+        if (capsule == null) {
+            throw new IllegalStateException("Ran out of capsules to open, raise openPoolSize");
+        }
+        return capsuleService.openCapsule(capsule.getId(), capsule.getRecipientAddress());
+    }
+
+    private Capsule newCapsule(LocalDateTime openDate) {
+        int address = (int) (sequence.incrementAndGet() % 1000);
+        return Capsule.builder()
+                .title("Benchmark capsule")
+                .description("Created by CapsuleWriteBenchmark")
+                .creatorAddress(BenchmarkApplication.creator(address))
+                .recipientAddress(BenchmarkApplication.recipient(address))
+                .conditionType(Capsule.ConditionType.TIME)
+                .openDate(openDate)
+                .viewCount(0)
+                .shareCount(0)
+                .subscriptionCount(0)
+                .featured(false)
+                .build();
+    }
+
+    /**
+     * Due capsules created on the mock chain before each iteration, each
+     * opened once. Only set up for the open benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class OpenableCapsules {
+
+        // Raise it if an iteration runs out of capsules
+        @Param({"100000"})
+        public int openPoolSize;
+
+        private final Queue<Capsule> capsules = new ConcurrentLinkedQueue<>();
+
+        @Setup(Level.Iteration)
+        public void prepare(CapsuleWriteBenchmark benchmark) throws Exception {
+            capsules.clear();
+            List<Capsule> prepared = new ArrayList<>(openPoolSize);
+            List<CapsuleSubmission> submissions = new ArrayList<>(openPoolSize);
+            for (int i = 0; i < openPoolSize; i++) {
+                Capsule capsule = benchmark.newCapsule(LocalDateTime.now().minusDays(1));
+                capsule.setStatus(Capsule.CapsuleStatus.SEALED);
+                prepared.add(capsule);
+                submissions.add(CapsuleSubmission.of(capsule));
+            }
+
+            // The mock chain only opens capsules it created
+            List<String> blockchainIds = benchmark.blockchainService.createCapsules(submissions);
+            for (int i = 0; i < prepared.size(); i++) {
+                prepared.get(i).setBlockchainId(blockchainIds.get(i));
+            }
+            capsules.addAll(benchmark.capsuleRepository.saveAll(prepared));
+        }
+    }
+}
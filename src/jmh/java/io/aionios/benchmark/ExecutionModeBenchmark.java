@@ -0,0 +1,124 @@
+package io.aionios.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bursts of concurrent capsule creations over HTTP against the mock chain with
+ * injected latency, with request handling on platform threads and on virtual
+ * threads. Each call holds a request thread while it waits on the chain, so on
+ * platform threads a burst larger than Tomcat's pool queues up behind it.
+ * The virtual mode needs Java 21 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final String BOUNDARY = "aionios-benchmark-boundary";
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"200", "2000"})
+    public int inFlight;
+
+    @Param({"50"})
+    public int chainLatencyMs;
+
+    private ConfigurableApplicationContext context;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private URI createUri;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() {
+        boolean virtual = "virtual".equals(threads);
+        if (virtual && Runtime.version().feature() < 21) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running " + Runtime.version());
+        }
+        context = BenchmarkApplication.start(Map.of(
+                "spring.threads.virtual.enabled", String.valueOf(virtual),
+                "blockchain.batch.enabled", "false",
+                "blockchain.mock.block-time-ms", "100",
+                "blockchain.mock.latency-ms", String.valueOf(chainLatencyMs),
+                "blockchain.mock.latency-jitter-ms", "0",
+                "blockchain.mock.failure-rate", "0"), WebApplicationType.SERVLET);
+        String port = context.getEnvironment().getRequiredProperty("local.server.port");
+        createUri = URI.create("http://localhost:" + port + "/api/capsules");
+        clientExecutor = Executors.newFixedThreadPool(4);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        clientExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int createBurst() {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[inFlight];
+        for (int i = 0; i < inFlight; i++) {
+            responses[i] = client.sendAsync(createRequest(), HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> {
+                        if (response.statusCode() != 201) {
+                            throw new IllegalStateException("Capsule creation failed with " + response.statusCode());
+                        }
+                    });
+        }
+        CompletableFuture.allOf(responses).join();
+        return responses.length;
+    }
+
+    private HttpRequest createRequest() {
+        int address = (int) (sequence.incrementAndGet() % 1000);
+        String capsule = "{\"title\":\"Benchmark capsule\",\"description\":\"Created by ExecutionModeBenchmark\","
+                + "\"creatorAddress\":\"" + BenchmarkApplication.creator(address) + "\","
+                + "\"recipientAddress\":\"" + BenchmarkApplication.recipient(address) + "\","
+                + "\"conditionType\":\"TIME\",\"openDate\":\"" + LocalDateTime.now().plusYears(1) + "\"}";
+        String body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"capsule\"\r\n"
+                + "Content-Type: application/json\r\n\r\n"
+                + capsule + "\r\n"
+                + "--" + BOUNDARY + "--\r\n";
+        return HttpRequest.newBuilder(createUri)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+}
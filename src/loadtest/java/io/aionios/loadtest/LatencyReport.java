@@ -0,0 +1,116 @@
+package io.aionios.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation latency histograms and error counts. Latencies are recorded
+ * from the time a request was scheduled to be sent, not from when it was
+ * actually sent, so a stalled server shows up in the percentiles instead of
+ * silently lowering the offered load.
+ */
+class LatencyReport {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> skipped = new EnumMap<>(Operation.class);
+
+    LatencyReport() {
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(operation, new LongAdder());
+            skipped.put(operation, new LongAdder());
+        }
+    }
+
+    void recordSuccess(Operation operation, long intendedStartNanos) {
+        recorders.get(operation).recordValue(elapsedMicros(intendedStartNanos));
+    }
+
+    void recordError(Operation operation, long intendedStartNanos) {
+        // Errors count towards latency too, a fast failure is still a response
+        recorders.get(operation).recordValue(elapsedMicros(intendedStartNanos));
+        errors.get(operation).increment();
+    }
+
+    void recordSkipped(Operation operation) {
+        skipped.get(operation).increment();
+    }
+
+    /**
+     * Discards everything recorded so far, such as the warmup
+     */
+    void reset() {
+        recorders.values().forEach(Recorder::getIntervalHistogram);
+        errors.values().forEach(LongAdder::reset);
+        skipped.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * Prints the percentiles of each operation and checks them against the
+     * latency objective
+     *
+     * @param out Where to print the report
+     * @param durationSeconds The length of the measured period
+     * @param p99ObjectiveMillis The p99 latency every operation must meet
+     * @return Whether every operation met the objective without errors
+     */
+    boolean print(PrintStream out, long durationSeconds, double p99ObjectiveMillis) {
+        boolean met = true;
+        out.printf("%-20s %9s %9s %7s %7s %10s %10s %10s %10s%n",
+                "operation", "requests", "req/s", "errors", "skipped", "p50 ms", "p99 ms", "p999 ms", "max ms");
+
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = recorders.get(operation).getIntervalHistogram();
+            total.add(histogram);
+            long errorCount = errors.get(operation).sum();
+            if (histogram.getTotalCount() == 0 && skipped.get(operation).sum() == 0) {
+                continue;
+            }
+
+            double p99 = millis(histogram.getValueAtPercentile(99));
+            boolean operationMet = errorCount == 0 && p99 <= p99ObjectiveMillis;
+            met &= operationMet;
+            out.printf("%-20s %9d %9.1f %7d %7d %10.2f %10.2f %10.2f %10.2f%s%n",
+                    operation.getLabel(),
+                    histogram.getTotalCount(),
+                    (double) histogram.getTotalCount() / durationSeconds,
+                    errorCount,
+                    skipped.get(operation).sum(),
+                    millis(histogram.getValueAtPercentile(50)),
+                    p99,
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()),
+                    operationMet ? "" : "  <- SLO missed");
+        }
+
+        out.printf("%-20s %9d %9.1f %7s %7s %10.2f %10.2f %10.2f %10.2f%n",
+                "all",
+                total.getTotalCount(),
+                (double) total.getTotalCount() / durationSeconds,
+                "", "",
+                millis(total.getValueAtPercentile(50)),
+                millis(total.getValueAtPercentile(99)),
+                millis(total.getValueAtPercentile(99.9)),
+                millis(total.getMaxValue()));
+        out.printf("p99 objective %.1f ms: %s%n", p99ObjectiveMillis, met ? "met" : "MISSED");
+        return met;
+    }
+
+    private static long elapsedMicros(long intendedStartNanos) {
+        return Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStartNanos));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
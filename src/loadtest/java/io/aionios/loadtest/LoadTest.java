@@ -0,0 +1,383 @@
+package io.aionios.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.aionios.AioniosApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * End-to-end load test of the REST API. Starts the application on a random
+ * port with the mock blockchain and IPFS services and an in-memory database,
+ * seeds it with capsules, and then sends a weighted mix of requests to every
+ * capsule endpoint at a fixed arrival rate. Arrivals follow a seeded Poisson
+ * process and do not wait for earlier responses (an open model), so a slow
+ * server faces a growing backlog just as it would in production. Reports the
+ * p50/p99/p999 latency of each endpoint and exits with status 1 if any of
+ * them misses the p99 objective or returned errors.
+ *
+ * <p>Settings are system properties:
+ * <ul>
+ *   <li>{@code loadtest.rate} - requests per second (200)</li>
+ *   <li>{@code loadtest.warmup-seconds} - unmeasured warmup (20)</li>
+ *   <li>{@code loadtest.duration-seconds} - measured period (60)</li>
+ *   <li>{@code loadtest.seed-capsules} - capsules created before the run (2000)</li>
+ *   <li>{@code loadtest.addresses} - distinct creator and recipient addresses (200)</li>
+ *   <li>{@code loadtest.payload-bytes} - content size of created capsules (16384)</li>
+ *   <li>{@code loadtest.p99-objective-ms} - p99 latency each endpoint must meet (250)</li>
+ *   <li>{@code loadtest.random-seed} - seed of arrivals and request choice (42)</li>
+ *   <li>{@code loadtest.mix.<operation>} - share of an operation, see {@link Operation}</li>
+ * </ul>
+ * Other {@code -D} properties, such as {@code blockchain.mock.latency-ms},
+ * configure the application under test.
+ */
+public class LoadTest {
+
+    private static final String BOUNDARY = "aionios-loadtest-boundary";
+
+    private final int rate = Integer.getInteger("loadtest.rate", 200);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 20);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+    private final int seedCapsules = Integer.getInteger("loadtest.seed-capsules", 2000);
+    private final int addresses = Integer.getInteger("loadtest.addresses", 200);
+    private final int payloadBytes = Integer.getInteger("loadtest.payload-bytes", 16384);
+    private final double p99ObjectiveMillis = Double.parseDouble(System.getProperty("loadtest.p99-objective-ms", "250"));
+    private final Random random = new Random(Long.getLong("loadtest.random-seed", 42L));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyReport report = new LatencyReport();
+    private final IdPool capsules = new IdPool();
+    // Content is only served once a capsule is opened
+    private final IdPool opened = new IdPool();
+    private final Queue<Openable> openable = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger createSequence = new AtomicInteger();
+    private final ExecutorService httpExecutor = Executors.newCachedThreadPool();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(httpExecutor)
+            .build();
+
+    private final Operation[] mix;
+    private final byte[] payload;
+    private String baseUrl;
+
+    LoadTest() {
+        List<Operation> weighted = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            for (int i = 0; i < operation.getWeight(); i++) {
+                weighted.add(operation);
+            }
+        }
+        this.mix = weighted.toArray(new Operation[0]);
+        this.payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest();
+        boolean met;
+        try (ConfigurableApplicationContext context = start(args)) {
+            met = loadTest.run(context.getEnvironment().getRequiredProperty("local.server.port", Integer.class));
+        } finally {
+            loadTest.httpExecutor.shutdownNow();
+        }
+        System.exit(met ? 0 : 1);
+    }
+
+    private static ConfigurableApplicationContext start(String[] args) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("logging.level.root", "WARN");
+        return new SpringApplicationBuilder(AioniosApplication.class)
+                .properties(properties)
+                .run(args);
+    }
+
+    boolean run(int port) throws Exception {
+        baseUrl = "http://localhost:" + port + "/api/capsules";
+
+        System.out.printf("Seeding %d capsules%n", seedCapsules);
+        seed();
+        System.out.printf("Warming up for %d s at %d requests/s%n", warmupSeconds, rate);
+        generate(warmupSeconds);
+        awaitInFlight();
+        report.reset();
+
+        System.out.printf("Measuring for %d s at %d requests/s%n", durationSeconds, rate);
+        generate(durationSeconds);
+        awaitInFlight();
+        return report.print(System.out, durationSeconds, p99ObjectiveMillis);
+    }
+
+    /**
+     * Creates the initial capsules, half of them already due so they can be
+     * opened, a few requests at a time
+     */
+    private void seed() throws Exception {
+        List<CompletableFuture<?>> batch = new ArrayList<>();
+        for (int i = 0; i < seedCapsules; i++) {
+            batch.add(client.sendAsync(createRequest(), HttpResponse.BodyHandlers.ofByteArray())
+                    .thenAccept(this::onCreated));
+            if (batch.size() == 32 || i == seedCapsules - 1) {
+                CompletableFuture.allOf(batch.toArray(new CompletableFuture[0])).join();
+                batch.clear();
+            }
+        }
+        if (capsules.size() < seedCapsules) {
+            throw new IllegalStateException("Only " + capsules.size() + " of " + seedCapsules + " capsules could be created");
+        }
+    }
+
+    /**
+     * Sends requests at the configured rate for the given time. Each request
+     * is timed from the moment it was due, whether or not the generator kept
+     * up with the schedule.
+     */
+    private void generate(int seconds) {
+        long intendedStart = System.nanoTime();
+        long end = intendedStart + TimeUnit.SECONDS.toNanos(seconds);
+        while (intendedStart < end) {
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(mix[random.nextInt(mix.length)], intendedStart);
+            // Exponential gaps between arrivals make a Poisson process
+            intendedStart += (long) (-Math.log(1 - random.nextDouble()) / rate * 1_000_000_000L);
+        }
+    }
+
+    private void send(Operation operation, long intendedStart) {
+        HttpRequest request;
+        try {
+            request = request(operation);
+        } catch (IOException e) {
+            report.recordError(operation, intendedStart);
+            return;
+        }
+        if (request == null) {
+            report.recordSkipped(operation);
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, error) -> {
+            try {
+                if (error != null || response.statusCode() >= 400) {
+                    report.recordError(operation, intendedStart);
+                } else {
+                    report.recordSuccess(operation, intendedStart);
+                    if (operation == Operation.CREATE) {
+                        onCreated(response);
+                    } else if (operation == Operation.OPEN) {
+                        onOpened(response);
+                    }
+                }
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @return The request for the operation, or null if there is nothing to
+     *         send it for, such as no capsule left to open
+     */
+    private HttpRequest request(Operation operation) throws IOException {
+        int address = randomAddress();
+        return switch (operation) {
+            case CREATE -> createRequest();
+            case OPEN -> {
+                Openable capsule = openable.poll();
+                yield capsule == null ? null
+                        : post("/" + capsule.id() + "/open?requesterAddress=" + capsule.recipientAddress());
+            }
+            case GET -> withCapsule(id -> get("/" + id));
+            case CONTENT -> payloadBytes > 0 ? withCapsule(opened, id -> get("/" + id + "/content")) : null;
+            case BY_CREATOR -> get("/creator/" + creator(address));
+            case BY_RECIPIENT -> get("/recipient/" + recipient(address));
+            case BY_ADDRESS -> get("/address/" + creator(address));
+            case EXPORT -> get("/address/" + creator(address) + "/export");
+            case EXPLORE_POPULAR -> get("/explore/popular?limit=20");
+            case EXPLORE_RECENT -> get("/explore/recent?limit=20");
+            case EXPLORE_SUBSCRIBED -> get("/explore/subscribed?limit=20");
+            case EXPLORE_FEATURED -> get("/explore/featured");
+            case VIEW -> withCapsule(id -> post("/" + id + "/view"));
+            case SHARE -> withCapsule(id -> post("/" + id + "/share"));
+            case SUBSCRIBE -> withCapsule(id -> post("/" + id + "/subscribe?userAddress=" + recipient(randomAddress())));
+        };
+    }
+
+    private HttpRequest createRequest() throws IOException {
+        int sequence = createSequence.incrementAndGet();
+        int address = randomAddress();
+        // Every other capsule is due right away so the open traffic has capsules to open
+        LocalDateTime openDate = sequence % 2 == 0
+                ? LocalDateTime.now().minusMinutes(1)
+                : LocalDateTime.now().plusYears(1);
+
+        Map<String, Object> capsule = new HashMap<>();
+        capsule.put("title", "Load test capsule " + sequence);
+        capsule.put("description", "Created by the load test");
+        capsule.put("creatorAddress", creator(address));
+        capsule.put("recipientAddress", recipient(address));
+        capsule.put("conditionType", "TIME");
+        capsule.put("openDate", openDate.toString());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(payloadBytes + 1024);
+        part(body, "capsule", null, "application/json", objectMapper.writeValueAsBytes(capsule));
+        if (payloadBytes > 0) {
+            // A distinct first chunk per capsule, so the content store can't deduplicate it away
+            byte[] content = payload.clone();
+            if (content.length >= Long.BYTES) {
+                ByteBuffer.wrap(content).putLong(0, sequence);
+            }
+            part(body, "content", "content.bin", "application/octet-stream", content);
+        }
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        return HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private void onCreated(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 201) {
+            return;
+        }
+        try {
+            JsonNode capsule = objectMapper.readTree(response.body());
+            long id = capsule.get("id").asLong();
+            capsules.add(id);
+            if (LocalDateTime.parse(capsule.get("openDate").asText()).isBefore(LocalDateTime.now())) {
+                openable.add(new Openable(id, capsule.get("recipientAddress").asText()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable create response", e);
+        }
+    }
+
+    private void onOpened(HttpResponse<byte[]> response) {
+        try {
+            JsonNode capsule = objectMapper.readTree(response.body());
+            if ("OPENED".equals(capsule.get("status").asText())) {
+                opened.add(capsule.get("id").asLong());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable open response", e);
+        }
+    }
+
+    private HttpRequest withCapsule(LongFunction<HttpRequest> request) {
+        return withCapsule(capsules, request);
+    }
+
+    private HttpRequest withCapsule(IdPool pool, LongFunction<HttpRequest> request) {
+        long id = pool.random(random);
+        return id < 0 ? null : request.apply(id);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest post(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).POST(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private int randomAddress() {
+        return random.nextInt(addresses);
+    }
+
+    private static String creator(int address) {
+        return "0xC0FFEE" + String.format("%034x", address);
+    }
+
+    private static String recipient(int address) {
+        return "0xBEEF" + String.format("%036x", address);
+    }
+
+    private static void part(ByteArrayOutputStream body, String name, String fileName, String contentType, byte[] content)
+            throws IOException {
+        String header = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\""
+                + (fileName != null ? "; filename=\"" + fileName + "\"" : "") + "\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n";
+        body.write(header.getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Openable(long id, String recipientAddress) {
+    }
+
+    /**
+     * Ids of the capsules created or opened so far, appended concurrently and
+     * picked at random
+     */
+    private static class IdPool {
+
+        private final Map<Integer, Long> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        void add(long id) {
+            ids.put(size.getAndIncrement(), id);
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        /**
+         * @return A random id, or -1 if there is none yet
+         */
+        long random(Random random) {
+            int count = size.get();
+            if (count == 0) {
+                return -1;
+            }
+            // The newest slot may not be filled in yet
+            Long id = ids.get(random.nextInt(count));
+            return id != null ? id : -1;
+        }
+    }
+}
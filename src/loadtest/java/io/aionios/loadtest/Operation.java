@@ -0,0 +1,40 @@
+package io.aionios.loadtest;
+
+/**
+ * The requests the load test sends, each one of the controller's endpoints,
+ * with the default share of the traffic it gets. Shares can be overridden
+ * with a {@code loadtest.mix.<name>} system property.
+ */
+enum Operation {
+    CREATE("create", 10),
+    OPEN("open", 5),
+    GET("get", 15),
+    CONTENT("content", 5),
+    BY_CREATOR("by-creator", 5),
+    BY_RECIPIENT("by-recipient", 5),
+    BY_ADDRESS("by-address", 5),
+    EXPORT("export", 1),
+    EXPLORE_POPULAR("explore-popular", 10),
+    EXPLORE_RECENT("explore-recent", 5),
+    EXPLORE_SUBSCRIBED("explore-subscribed", 5),
+    EXPLORE_FEATURED("explore-featured", 4),
+    VIEW("view", 15),
+    SHARE("share", 5),
+    SUBSCRIBE("subscribe", 5);
+
+    private final String label;
+    private final int defaultWeight;
+
+    Operation(String label, int defaultWeight) {
+        this.label = label;
+        this.defaultWeight = defaultWeight;
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    int getWeight() {
+        return Integer.getInteger("loadtest.mix." + label, defaultWeight);
+    }
+}
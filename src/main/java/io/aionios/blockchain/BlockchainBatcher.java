@@ -0,0 +1,110 @@
+package io.aionios.blockchain;
+
+import io.aionios.config.ExecutionMode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects capsule creations and openings from concurrent callers into
+ * batched {@link BlockchainService} calls, so a burst of capsules costs a few
+ * multicall transactions instead of one transaction per capsule. When
+ * batching is disabled every call goes straight to the service.
+ */
+@Component
+@Slf4j
+public class BlockchainBatcher {
+
+    private final BlockchainService blockchainService;
+    private final boolean enabled;
+    private final long awaitTimeoutMillis;
+    private final MicroBatcher<CapsuleSubmission, String> creations;
+    private final MicroBatcher<CapsuleOpening, Boolean> openings;
+
+    public BlockchainBatcher(
+            BlockchainService blockchainService,
+            ExecutionMode executionMode,
+            @Value("${blockchain.batch.enabled:true}") boolean enabled,
+            @Value("${blockchain.batch.max-size:50}") int maxSize,
+            @Value("${blockchain.batch.max-delay-ms:200}") long maxDelayMillis,
+            @Value("${blockchain.batch.max-concurrent:4}") int maxConcurrent,
+            @Value("${blockchain.batch.await-timeout-ms:60000}") long awaitTimeoutMillis) {
+        this.blockchainService = blockchainService;
+        this.enabled = enabled;
+        this.awaitTimeoutMillis = awaitTimeoutMillis;
+        if (enabled) {
+            this.creations = new MicroBatcher<>("capsule-create", maxSize, maxDelayMillis, maxConcurrent,
+                    blockchainService::createCapsules, executionMode.threadFactory("capsule-create-batch"));
+            this.openings = new MicroBatcher<>("capsule-open", maxSize, maxDelayMillis, maxConcurrent,
+                    blockchainService::openCapsules, executionMode.threadFactory("capsule-open-batch"));
+            log.info("Blockchain batching enabled: up to {} capsules per transaction, {} ms window", maxSize, maxDelayMillis);
+        } else {
+            this.creations = null;
+            this.openings = null;
+        }
+    }
+
+    /**
+     * Queues a capsule for creation on the blockchain
+     *
+     * @param submission The capsule to create
+     * @return The blockchain ID, once the batch holding the capsule was sent
+     */
+    public CompletableFuture<String> createCapsule(CapsuleSubmission submission) {
+        if (!enabled) {
+            try {
+                return CompletableFuture.completedFuture(blockchainService.createCapsule(
+                        submission.title(),
+                        submission.ipfsHash(),
+                        submission.creatorAddress(),
+                        submission.recipientAddress(),
+                        submission.conditionType(),
+                        submission.conditionData()));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return creations.submit(submission);
+    }
+
+    /**
+     * Queues a capsule to be opened on the blockchain
+     *
+     * @param blockchainId The blockchain ID of the capsule
+     * @param requesterAddress The address requesting to open the capsule
+     * @return Whether the capsule was opened, once its batch was sent
+     */
+    public CompletableFuture<Boolean> openCapsule(String blockchainId, String requesterAddress) {
+        if (!enabled) {
+            try {
+                return CompletableFuture.completedFuture(blockchainService.openCapsule(blockchainId, requesterAddress));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return openings.submit(new CapsuleOpening(blockchainId, requesterAddress));
+    }
+
+    /**
+     * Waits for a queued creation or opening, for at most the configured
+     * timeout, so a caller holding a transaction never waits on the chain
+     * indefinitely
+     *
+     * @throws java.util.concurrent.TimeoutException If the batch did not complete in time
+     */
+    public <T> T await(CompletableFuture<T> result) throws Exception {
+        return result.get(awaitTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (enabled) {
+            creations.close();
+            openings.close();
+        }
+    }
+}
@@ -2,6 +2,9 @@ package io.aionios.blockchain;
 
 import io.aionios.model.Capsule;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface BlockchainService {
 
     /**
@@ -24,6 +27,28 @@ public interface BlockchainService {
             Capsule.ConditionType conditionType,
             String conditionData) throws Exception;
     
+    /**
+     * Creates several time capsules on the blockchain, as few transactions as
+     * the implementation allows
+     * 
+     * @param submissions The capsules to create
+     * @return The blockchain IDs of the created capsules, in the same order
+     * @throws Exception If there's an error creating the capsules on the blockchain
+     */
+    default List<String> createCapsules(List<CapsuleSubmission> submissions) throws Exception {
+        List<String> blockchainIds = new ArrayList<>(submissions.size());
+        for (CapsuleSubmission submission : submissions) {
+            blockchainIds.add(createCapsule(
+                    submission.title(),
+                    submission.ipfsHash(),
+                    submission.creatorAddress(),
+                    submission.recipientAddress(),
+                    submission.conditionType(),
+                    submission.conditionData()));
+        }
+        return blockchainIds;
+    }
+    
     /**
      * Opens a capsule on the blockchain
      * 
@@ -34,6 +59,22 @@ public interface BlockchainService {
      */
     boolean openCapsule(String blockchainId, String requesterAddress) throws Exception;
     
+    /**
+     * Opens several capsules on the blockchain, in as few transactions as
+     * the implementation allows
+     * 
+     * @param openings The capsules to open and who is opening them
+     * @return Whether each capsule was opened, in the same order
+     * @throws Exception If there's an error opening the capsules on the blockchain
+     */
+    default List<Boolean> openCapsules(List<CapsuleOpening> openings) throws Exception {
+        List<Boolean> results = new ArrayList<>(openings.size());
+        for (CapsuleOpening opening : openings) {
+            results.add(openCapsule(opening.blockchainId(), opening.requesterAddress()));
+        }
+        return results;
+    }
+    
     /**
      * Checks if a capsule is ready to be opened on the blockchain
      * 
@@ -0,0 +1,8 @@
+package io.aionios.blockchain;
+
+/**
+ * A request to open a capsule on the blockchain, as passed to
+ * {@link BlockchainService#openCapsules}.
+ */
+public record CapsuleOpening(String blockchainId, String requesterAddress) {
+}
@@ -0,0 +1,26 @@
+package io.aionios.blockchain;
+
+import io.aionios.model.Capsule;
+
+/**
+ * A capsule to be created on the blockchain, as passed to
+ * {@link BlockchainService#createCapsules}.
+ */
+public record CapsuleSubmission(
+        String title,
+        String ipfsHash,
+        String creatorAddress,
+        String recipientAddress,
+        Capsule.ConditionType conditionType,
+        String conditionData) {
+
+    public static CapsuleSubmission of(Capsule capsule) {
+        return new CapsuleSubmission(
+                capsule.getTitle(),
+                capsule.getIpfsHash(),
+                capsule.getCreatorAddress(),
+                capsule.getRecipientAddress(),
+                capsule.getConditionType(),
+                capsule.getConditionData());
+    }
+}
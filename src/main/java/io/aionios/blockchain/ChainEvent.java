@@ -0,0 +1,14 @@
+package io.aionios.blockchain;
+
+import io.aionios.model.Capsule;
+
+/**
+ * A capsule state change decoded from a contract event log.
+ *
+ * @param blockNumber The block the event was emitted in
+ * @param logIndex The position of the log within its block
+ * @param blockchainId The blockchain ID of the capsule
+ * @param status The status the event moved the capsule to
+ */
+public record ChainEvent(long blockNumber, int logIndex, String blockchainId, Capsule.CapsuleStatus status) {
+}
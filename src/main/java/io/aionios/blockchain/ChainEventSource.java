@@ -0,0 +1,36 @@
+package io.aionios.blockchain;
+
+import java.util.List;
+
+/**
+ * Source of capsule contract events, read in block ranges.
+ */
+public interface ChainEventSource {
+
+    /**
+     * Gets the number of the latest block
+     *
+     * @return The latest block number
+     * @throws Exception If there's an error reading from the chain
+     */
+    long getLatestBlockNumber() throws Exception;
+
+    /**
+     * Gets the hash of a block, to detect whether it was replaced by a reorg
+     *
+     * @param blockNumber The block number
+     * @return The block hash, or null if there is no such block
+     * @throws Exception If there's an error reading from the chain
+     */
+    String getBlockHash(long blockNumber) throws Exception;
+
+    /**
+     * Gets the capsule events emitted in a range of blocks
+     *
+     * @param fromBlock The first block, inclusive
+     * @param toBlock The last block, inclusive
+     * @return The events in block and log order
+     * @throws Exception If there's an error reading from the chain
+     */
+    List<ChainEvent> getEvents(long fromBlock, long toBlock) throws Exception;
+}
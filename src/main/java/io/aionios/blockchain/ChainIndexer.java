@@ -0,0 +1,187 @@
+package io.aionios.blockchain;
+
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.model.JobCheckpoint;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.repository.JobCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps capsule statuses in line with the chain by following the capsule
+ * contract's events. Blocks are read in ranges once they are
+ * {@code reorgDepth} blocks deep, the status changes of each range are
+ * applied with bulk updates, and the last indexed block is checkpointed in
+ * the same transaction. If the checkpointed block was still replaced by a
+ * deeper reorg, indexing rewinds and replays the range, which is safe because
+ * capsules only ever move forward.
+ */
+@Component
+@Slf4j
+public class ChainIndexer {
+
+    static final String CHECKPOINT = "chain-indexer";
+
+    private static final int UPDATE_CHUNK_SIZE = 1000;
+
+    private final ChainEventSource eventSource;
+    private final CapsuleRepository capsuleRepository;
+    private final JobCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final long startBlock;
+    private final long rangeSize;
+    private final long reorgDepth;
+
+    public ChainIndexer(
+            ChainEventSource eventSource,
+            CapsuleRepository capsuleRepository,
+            JobCheckpointRepository checkpointRepository,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${chain.indexer.enabled:true}") boolean enabled,
+            @Value("${chain.indexer.start-block:0}") long startBlock,
+            @Value("${chain.indexer.range-size:1000}") long rangeSize,
+            @Value("${chain.indexer.reorg-depth:12}") long reorgDepth) {
+        this.eventSource = eventSource;
+        this.capsuleRepository = capsuleRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.startBlock = startBlock;
+        this.rangeSize = rangeSize;
+        this.reorgDepth = reorgDepth;
+    }
+
+    @Scheduled(fixedDelayString = "${chain.indexer.poll-interval-ms:5000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            index();
+        } catch (Exception e) {
+            // The next poll resumes from the checkpoint
+            log.error("Failed to index chain events", e);
+        }
+    }
+
+    /**
+     * Indexes all blocks that are deep enough and not indexed yet
+     *
+     * @return The number of capsules whose status changed
+     * @throws Exception If there's an error reading from the chain
+     */
+    public int index() throws Exception {
+        long safeHead = eventSource.getLatestBlockNumber() - reorgDepth;
+        long from = nextBlock();
+
+        int changed = 0;
+        while (from <= safeHead) {
+            long to = Math.min(safeHead, from + rangeSize - 1);
+            List<ChainEvent> events = eventSource.getEvents(from, to);
+            String hash = eventSource.getBlockHash(to);
+
+            Map<Capsule.CapsuleStatus, List<Long>> updates = transactionTemplate.execute(status -> {
+                Map<Capsule.CapsuleStatus, List<Long>> applied = apply(events);
+                checkpointRepository.save(JobCheckpoint.builder()
+                        .name(CHECKPOINT)
+                        .positionId(to)
+                        .marker(hash)
+                        .build());
+                return applied;
+            });
+
+            for (Map.Entry<Capsule.CapsuleStatus, List<Long>> update : updates.entrySet()) {
+                eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(update.getKey(), update.getValue()));
+                changed += update.getValue().size();
+            }
+            if (!events.isEmpty()) {
+                log.info("Indexed blocks {}-{}: {} events", from, to, events.size());
+            }
+            from = to + 1;
+        }
+        return changed;
+    }
+
+    private long nextBlock() throws Exception {
+        JobCheckpoint checkpoint = checkpointRepository.findById(CHECKPOINT).orElse(null);
+        if (checkpoint == null) {
+            return startBlock;
+        }
+
+        long indexed = checkpoint.getPositionId();
+        if (Objects.equals(eventSource.getBlockHash(indexed), checkpoint.getMarker())) {
+            return indexed + 1;
+        }
+        long rewound = Math.max(startBlock, indexed - reorgDepth + 1);
+        log.warn("Block {} was reorganized deeper than {} blocks, reindexing from block {}", indexed, reorgDepth, rewound);
+        return rewound;
+    }
+
+    /**
+     * Applies the events in lifecycle order with one bulk update per status
+     *
+     * @return The ids of the capsules that changed, by their new status
+     */
+    private Map<Capsule.CapsuleStatus, List<Long>> apply(List<ChainEvent> events) {
+        Map<Capsule.CapsuleStatus, Set<String>> byStatus = new EnumMap<>(Capsule.CapsuleStatus.class);
+        for (ChainEvent event : events) {
+            byStatus.computeIfAbsent(event.status(), status -> new LinkedHashSet<>()).add(event.blockchainId());
+        }
+
+        Map<Capsule.CapsuleStatus, List<Long>> changed = new EnumMap<>(Capsule.CapsuleStatus.class);
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Capsule.CapsuleStatus, Set<String>> entry : byStatus.entrySet()) {
+            Capsule.CapsuleStatus target = entry.getKey();
+            List<Capsule.CapsuleStatus> behind = statusesBehind(target);
+            List<String> blockchainIds = new ArrayList<>(entry.getValue());
+
+            for (int i = 0; i < blockchainIds.size(); i += UPDATE_CHUNK_SIZE) {
+                List<String> chunk = blockchainIds.subList(i, Math.min(blockchainIds.size(), i + UPDATE_CHUNK_SIZE));
+                List<Long> ids = capsuleRepository.findIdsByBlockchainIds(chunk, behind);
+                if (ids.isEmpty()) {
+                    continue;
+                }
+                if (target == Capsule.CapsuleStatus.OPENED) {
+                    capsuleRepository.markOpened(ids, now);
+                } else {
+                    capsuleRepository.updateStatus(ids, target);
+                }
+                changed.computeIfAbsent(target, status -> new ArrayList<>()).addAll(ids);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return The statuses a capsule can be moved to the target status from:
+     *         every earlier lifecycle status, and FAILED, since a creation
+     *         given up on locally may still have made it on chain
+     */
+    private static List<Capsule.CapsuleStatus> statusesBehind(Capsule.CapsuleStatus target) {
+        List<Capsule.CapsuleStatus> statuses = new ArrayList<>();
+        for (Capsule.CapsuleStatus status : Capsule.CapsuleStatus.values()) {
+            if (status.ordinal() < target.ordinal() || status == Capsule.CapsuleStatus.FAILED) {
+                statuses.add(status);
+            }
+        }
+        return statuses;
+    }
+}
@@ -0,0 +1,144 @@
+package io.aionios.blockchain;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups individually submitted items into batches, flushing a batch once it
+ * reaches its maximum size or once its oldest item has waited for the
+ * maximum delay. Batches are handled on a small pool, so the next batch can
+ * be collected and sent while earlier ones are still in flight.
+ *
+ * @param <T> The item type
+ * @param <R> The per-item result type
+ */
+@Slf4j
+public class MicroBatcher<T, R> implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface BatchHandler<T, R> {
+
+        /**
+         * @return One result per item, in the same order
+         */
+        List<R> handle(List<T> batch) throws Exception;
+    }
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BatchHandler<T, R> handler;
+
+    private final BlockingQueue<Pending<T, R>> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService batchExecutor;
+    private final Thread collector;
+    private volatile boolean running = true;
+
+    public MicroBatcher(String name, int maxBatchSize, long maxDelayMillis, int maxConcurrentBatches,
+                        BatchHandler<T, R> handler, ThreadFactory batchThreadFactory) {
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.handler = handler;
+        // At most maxConcurrentBatches batches are in flight, whatever kind of thread sends them
+        this.batchExecutor = Executors.newFixedThreadPool(maxConcurrentBatches, batchThreadFactory);
+        this.collector = new Thread(this::collect, name + "-collector");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    public CompletableFuture<R> submit(T item) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException(name + " batcher is closed"));
+        }
+        CompletableFuture<R> result = new CompletableFuture<>();
+        queue.add(new Pending<>(item, result));
+        if (!running) {
+            // Closed while the item was being queued, after the queue was drained
+            abandon(drain());
+        }
+        return result;
+    }
+
+    /**
+     * Stops collecting. Batches already handed to the pool are still sent;
+     * every item not yet in one of them fails.
+     */
+    @Override
+    public void close() {
+        running = false;
+        collector.interrupt();
+        batchExecutor.shutdown();
+        abandon(drain());
+    }
+
+    private void collect() {
+        List<Pending<T, R>> batch = List.of();
+        while (running) {
+            try {
+                batch = new ArrayList<>(maxBatchSize);
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<T, R> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                List<Pending<T, R>> collected = batch;
+                batchExecutor.execute(() -> dispatch(collected));
+            } catch (InterruptedException | RejectedExecutionException e) {
+                // Closed while a batch was being collected or handed over
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                abandon(batch);
+                return;
+            }
+        }
+    }
+
+    private List<Pending<T, R>> drain() {
+        List<Pending<T, R>> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        return pending;
+    }
+
+    private void abandon(List<Pending<T, R>> pending) {
+        pending.forEach(item -> item.result().completeExceptionally(
+                new IllegalStateException(name + " batcher is closed")));
+    }
+
+    private void dispatch(List<Pending<T, R>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        batch.forEach(pending -> items.add(pending.item()));
+        try {
+            List<R> results = handler.handle(items);
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException("Expected " + batch.size() + " results but got " + results.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i));
+            }
+            log.debug("{} batcher handled a batch of {}", name, batch.size());
+        } catch (Exception e) {
+            log.error("{} batcher failed a batch of {}", name, batch.size(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    private record Pending<T, R>(T item, CompletableFuture<R> result) {
+    }
+}
@@ -1,55 +1,385 @@
 package io.aionios.blockchain;
 
 import io.aionios.model.Capsule;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * In-process simulated chain, safe to use as the blockchain backend of load
+ * tests. Transactions are accepted concurrently into a pending pool and a
+ * miner thread packs them into a block every {@code blockTimeMillis}, so the
+ * mock doubles as a {@link ChainEventSource} for the chain indexer. Call
+ * latency and a failure rate can be injected; both, like capsule IDs and
+ * block hashes, are derived from the seed so runs are repeatable. Mined
+ * events can be appended to a log that is replayed on startup.
+ */
 @Service
 @Primary
 @Slf4j
-public class MockBlockchainService implements BlockchainService {
+public class MockBlockchainService implements BlockchainService, ChainEventSource {
 
-    private final Map<String, Capsule.CapsuleStatus> capsuleStatuses = new HashMap<>();
+    // Empty blocks are logged only as an occasional head marker
+    private static final long HEAD_MARKER_INTERVAL = 100;
+
+    private final Map<String, Capsule.CapsuleStatus> capsuleStatuses = new ConcurrentHashMap<>();
+    private final Queue<ChainEvent> pending = new ConcurrentLinkedQueue<>();
+
+    // Blocks are read without locking; the miner and reorgs write under chainLock
+    private final NavigableMap<Long, MockBlock> blocks = new ConcurrentSkipListMap<>();
+    private final ReentrantLock chainLock = new ReentrantLock();
+    private volatile long head;
+    private long reorgs;
+
+    private final long seed;
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final double failureRate;
+    private final AtomicLong capsuleSequence = new AtomicLong();
+    private final AtomicLong callSequence = new AtomicLong();
+
+    private final BufferedWriter eventLog;
+    private final ScheduledExecutorService miner;
+
+    public MockBlockchainService(
+            @Value("${blockchain.mock.block-time-ms:1000}") long blockTimeMillis,
+            @Value("${blockchain.mock.latency-ms:0}") long latencyMillis,
+            @Value("${blockchain.mock.latency-jitter-ms:0}") long latencyJitterMillis,
+            @Value("${blockchain.mock.failure-rate:0}") double failureRate,
+            @Value("${blockchain.mock.seed:1}") long seed,
+            @Value("${blockchain.mock.log-file:}") String logFile) throws IOException {
+        this.seed = seed;
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        this.failureRate = failureRate;
+
+        blocks.put(0L, new MockBlock(0, hash(null, 0, List.of(), 0), List.of()));
+        if (logFile.isBlank()) {
+            this.eventLog = null;
+        } else {
+            Path path = Path.of(logFile);
+            if (Files.exists(path)) {
+                replay(path);
+            } else if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            this.eventLog = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        this.miner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mock-chain-miner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        miner.scheduleAtFixedRate(this::mineSafely, blockTimeMillis, blockTimeMillis, TimeUnit.MILLISECONDS);
+        log.info("Mock blockchain service: Chain at block {} with {} capsules, mining every {} ms",
+                head, capsuleStatuses.size(), blockTimeMillis);
+    }
 
     @Override
     public String createCapsule(
-            String title, 
-            String ipfsHash, 
-            String creatorAddress, 
-            String recipientAddress, 
-            Capsule.ConditionType conditionType, 
-            String conditionData) {
-        
-        String blockchainId = "mock_" + UUID.randomUUID().toString();
-        capsuleStatuses.put(blockchainId, Capsule.CapsuleStatus.SEALED);
-        
+            String title,
+            String ipfsHash,
+            String creatorAddress,
+            String recipientAddress,
+            Capsule.ConditionType conditionType,
+            String conditionData) throws Exception {
+
+        simulateCall();
+        String blockchainId = submitCreation();
+
         log.info("Mock blockchain service: Created capsule with ID {}", blockchainId);
         return blockchainId;
     }
 
     @Override
-    public boolean openCapsule(String blockchainId, String requesterAddress) {
-        if (!capsuleStatuses.containsKey(blockchainId)) {
+    public List<String> createCapsules(List<CapsuleSubmission> submissions) throws Exception {
+        // One simulated transaction for the whole batch, as a multicall would be
+        simulateCall();
+        List<String> blockchainIds = new ArrayList<>(submissions.size());
+        for (int i = 0; i < submissions.size(); i++) {
+            blockchainIds.add(submitCreation());
+        }
+
+        log.info("Mock blockchain service: Created {} capsules in one transaction", blockchainIds.size());
+        return blockchainIds;
+    }
+
+    @Override
+    public boolean openCapsule(String blockchainId, String requesterAddress) throws Exception {
+        simulateCall();
+        if (!submitOpening(blockchainId)) {
             return false;
         }
-        
-        capsuleStatuses.put(blockchainId, Capsule.CapsuleStatus.OPENED);
         log.info("Mock blockchain service: Opened capsule with ID {}", blockchainId);
         return true;
     }
 
     @Override
-    public boolean isCapsuleReadyToOpen(String blockchainId) {
+    public List<Boolean> openCapsules(List<CapsuleOpening> openings) throws Exception {
+        simulateCall();
+        List<Boolean> results = new ArrayList<>(openings.size());
+        for (CapsuleOpening opening : openings) {
+            results.add(submitOpening(opening.blockchainId()));
+        }
+
+        log.info("Mock blockchain service: Opened {} capsules in one transaction", openings.size());
+        return results;
+    }
+
+    @Override
+    public boolean isCapsuleReadyToOpen(String blockchainId) throws Exception {
+        simulateCall();
         return capsuleStatuses.containsKey(blockchainId);
     }
 
     @Override
-    public Capsule.CapsuleStatus getCapsuleStatus(String blockchainId) {
+    public Capsule.CapsuleStatus getCapsuleStatus(String blockchainId) throws Exception {
+        simulateCall();
         return capsuleStatuses.getOrDefault(blockchainId, Capsule.CapsuleStatus.SEALED);
     }
+
+    @Override
+    public long getLatestBlockNumber() {
+        return head;
+    }
+
+    @Override
+    public String getBlockHash(long blockNumber) {
+        MockBlock block = blocks.get(blockNumber);
+        return block != null ? block.hash() : null;
+    }
+
+    @Override
+    public List<ChainEvent> getEvents(long fromBlock, long toBlock) {
+        List<ChainEvent> events = new ArrayList<>();
+        if (fromBlock <= toBlock) {
+            for (MockBlock block : blocks.subMap(fromBlock, true, toBlock, true).values()) {
+                events.addAll(block.events());
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Replaces the hashes of the latest blocks, as a chain reorganization
+     * would, keeping their events. Used to exercise the indexer's reorg
+     * handling.
+     *
+     * @param depth The number of blocks to replace
+     */
+    public void simulateReorg(int depth) {
+        chainLock.lock();
+        try {
+            reorgs++;
+            for (long number = Math.max(1, head - depth + 1); number <= head; number++) {
+                MockBlock block = blocks.get(number);
+                String parentHash = blocks.get(number - 1).hash();
+                blocks.put(number, new MockBlock(number, hash(parentHash, number, block.events(), reorgs), block.events()));
+            }
+        } finally {
+            chainLock.unlock();
+        }
+        log.info("Mock blockchain service: Reorganized the last {} blocks", depth);
+    }
+
+    /**
+     * Mines the pending transactions into a new block
+     *
+     * @return The number of the mined block
+     */
+    public long mine() throws IOException {
+        chainLock.lock();
+        try {
+            List<ChainEvent> events = new ArrayList<>();
+            long number = head + 1;
+            ChainEvent transaction;
+            while ((transaction = pending.poll()) != null) {
+                events.add(new ChainEvent(number, events.size(), transaction.blockchainId(), transaction.status()));
+            }
+
+            if (eventLog != null) {
+                if (!events.isEmpty()) {
+                    for (ChainEvent event : events) {
+                        eventLog.write(event.blockNumber() + "," + event.status() + "," + event.blockchainId());
+                        eventLog.newLine();
+                    }
+                    eventLog.flush();
+                } else if (number % HEAD_MARKER_INTERVAL == 0) {
+                    writeHeadMarker(number);
+                }
+            }
+            append(number, events);
+            if (events.isEmpty()) {
+                log.debug("Mock blockchain service: Mined empty block {}", number);
+            } else {
+                log.debug("Mock blockchain service: Mined block {} with {} events", number, events.size());
+            }
+            return number;
+        } finally {
+            chainLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        miner.shutdownNow();
+        miner.awaitTermination(5, TimeUnit.SECONDS);
+        // Pending transactions are mined rather than lost
+        mine();
+        if (eventLog != null) {
+            writeHeadMarker(head);
+            eventLog.close();
+        }
+        log.info("Mock blockchain service: Stopped at block {}", head);
+    }
+
+    // A block logged by its number alone, so a replay reaches the same head
+    private void writeHeadMarker(long number) throws IOException {
+        eventLog.write(Long.toString(number));
+        eventLog.newLine();
+        eventLog.flush();
+    }
+
+    private String submitCreation() {
+        long sequence = capsuleSequence.incrementAndGet();
+        String blockchainId = "mock_" + new UUID(mix(seed ^ sequence), mix(sequence));
+        capsuleStatuses.put(blockchainId, Capsule.CapsuleStatus.SEALED);
+        pending.add(new ChainEvent(0, 0, blockchainId, Capsule.CapsuleStatus.SEALED));
+        return blockchainId;
+    }
+
+    private boolean submitOpening(String blockchainId) {
+        if (capsuleStatuses.replace(blockchainId, Capsule.CapsuleStatus.OPENED) == null) {
+            return false;
+        }
+        pending.add(new ChainEvent(0, 0, blockchainId, Capsule.CapsuleStatus.OPENED));
+        return true;
+    }
+
+    /**
+     * Waits for the configured latency and fails at the configured rate,
+     * both drawn from the seeded sequence of calls
+     */
+    private void simulateCall() throws Exception {
+        long call = callSequence.incrementAndGet();
+        if (latencyMillis > 0 || latencyJitterMillis > 0) {
+            Thread.sleep(latencyMillis + (latencyJitterMillis > 0 ? Math.floorMod(mix(seed + call), latencyJitterMillis + 1) : 0));
+        }
+        if (failureRate > 0 && (mix(seed * 31 + call) >>> 11) * 0x1.0p-53 < failureRate) {
+            throw new IOException("Mock blockchain service: Simulated failure of call " + call);
+        }
+    }
+
+    private void mineSafely() {
+        try {
+            mine();
+        } catch (Exception e) {
+            log.error("Mock blockchain service: Failed to mine a block", e);
+        }
+    }
+
+    // Called with chainLock held, or from the constructor
+    private void append(long number, List<ChainEvent> events) {
+        String parentHash = blocks.get(number - 1).hash();
+        blocks.put(number, new MockBlock(number, hash(parentHash, number, events, 0), List.copyOf(events)));
+        head = number;
+    }
+
+    /**
+     * Rebuilds the chain and capsule statuses from an event log. Blocks with
+     * events are logged as their events, and the head is logged by its number
+     * every {@link #HEAD_MARKER_INTERVAL} blocks and on shutdown; the chain is
+     * rebuilt up to the last block logged. After a crash it can end behind a
+     * checkpoint the chain indexer took, which the indexer handles like a
+     * reorg. Since hashes are deterministic the rebuilt chain matches the
+     * original unless it was reorganized.
+     */
+    private void replay(Path path) throws IOException {
+        NavigableMap<Long, List<ChainEvent>> logged = new TreeMap<>();
+        long last = 0;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",", 3);
+            if (fields.length == 1 && !line.isBlank()) {
+                try {
+                    last = Math.max(last, Long.parseLong(line.trim()));
+                } catch (NumberFormatException e) {
+                    // A line cut short by a crash
+                }
+                continue;
+            }
+            if (fields.length < 3) {
+                // A line cut short by a crash
+                continue;
+            }
+            long number = Long.parseLong(fields[0]);
+            last = Math.max(last, number);
+            List<ChainEvent> events = logged.computeIfAbsent(number, key -> new ArrayList<>());
+            Capsule.CapsuleStatus status = Capsule.CapsuleStatus.valueOf(fields[1]);
+            events.add(new ChainEvent(number, events.size(), fields[2], status));
+
+            capsuleStatuses.put(fields[2], status);
+            if (status == Capsule.CapsuleStatus.SEALED) {
+                capsuleSequence.incrementAndGet();
+            }
+        }
+
+        for (long number = 1; number <= last; number++) {
+            append(number, logged.getOrDefault(number, List.of()));
+        }
+        log.info("Mock blockchain service: Replayed {} blocks, {} with events, from {}", last, logged.size(), path);
+    }
+
+    private String hash(String parentHash, long number, List<ChainEvent> events, long salt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder header = new StringBuilder()
+                    .append(seed).append('|').append(parentHash).append('|').append(number).append('|').append(salt);
+            for (ChainEvent event : events) {
+                header.append('|').append(event.status()).append(':').append(event.blockchainId());
+            }
+            return "0x" + HexFormat.of().formatHex(digest.digest(header.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // SplitMix64 finalizer, spreads sequential inputs over the whole long range
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private record MockBlock(long number, String hash, List<ChainEvent> events) {
+    }
 }
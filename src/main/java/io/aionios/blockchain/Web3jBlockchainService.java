@@ -1,15 +1,22 @@
 package io.aionios.blockchain;
 
+import io.aionios.blockchain.rpc.LatencyHistogram;
+import io.aionios.blockchain.rpc.RoutingHttpService;
 import io.aionios.model.Capsule;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.gas.ContractGasProvider;
 import org.web3j.tx.gas.StaticGasProvider;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Real implementation of BlockchainService that connects to an Ethereum node.
@@ -26,14 +33,33 @@ public class Web3jBlockchainService implements BlockchainService {
     private static final BigInteger GAS_LIMIT = BigInteger.valueOf(4_300_000L);
     private final ContractGasProvider gasProvider = new StaticGasProvider(GAS_PRICE, GAS_LIMIT);
     
+    private final RoutingHttpService rpcService;
+    
     public Web3jBlockchainService(
-            @Value("${web3j.client-address}") String nodeUrl,
-            @Value("${time.capsule.contract.address:}") String contractAddress) {
+            @Value("${web3j.client-address}") String nodeUrls,
+            @Value("${time.capsule.contract.address:}") String contractAddress,
+            @Value("${web3j.rpc.max-idle-connections:20}") int maxIdleConnections,
+            @Value("${web3j.rpc.keep-alive-ms:300000}") long keepAliveMillis,
+            @Value("${web3j.rpc.connect-timeout-ms:2000}") long connectTimeoutMillis,
+            @Value("${web3j.rpc.read-timeout-ms:10000}") long readTimeoutMillis,
+            @Value("${web3j.rpc.failure-threshold:3}") int failureThreshold,
+            @Value("${web3j.rpc.open-circuit-ms:30000}") long openCircuitMillis) {
         
-        this.web3j = Web3j.build(new HttpService(nodeUrl));
+        List<String> urls = Arrays.stream(nodeUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+        this.rpcService = new RoutingHttpService(new RoutingHttpService.Settings(
+                maxIdleConnections,
+                keepAliveMillis,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                failureThreshold,
+                openCircuitMillis), urls);
+        this.web3j = Web3j.build(rpcService);
         this.contractAddress = contractAddress;
         
-        log.info("Web3j client initialized with node URL: {}", nodeUrl);
+        log.info("Web3j client initialized with node URLs: {}", urls);
         if (contractAddress != null && !contractAddress.isEmpty()) {
             log.info("Using existing TimeCapsule contract at: {}", contractAddress);
         } else {
@@ -56,7 +82,22 @@ public class Web3jBlockchainService implements BlockchainService {
         // This is a placeholder for the future implementation
         
         // Mock implementation for development
-        return "bc_" + System.currentTimeMillis();
+        return placeholderId();
+    }
+
+    @Override
+    public List<String> createCapsules(List<CapsuleSubmission> submissions) throws Exception {
+        log.info("Creating {} capsules on blockchain in one transaction", submissions.size());
+        
+        // TODO: Send the submissions as one multicall to the contract when the Solidity contract is ready
+        // This is a placeholder for the future implementation
+        
+        // Mock implementation for development
+        List<String> blockchainIds = new ArrayList<>(submissions.size());
+        for (int i = 0; i < submissions.size(); i++) {
+            blockchainIds.add(placeholderId());
+        }
+        return blockchainIds;
     }
 
     @Override
@@ -70,6 +111,17 @@ public class Web3jBlockchainService implements BlockchainService {
         return true;
     }
 
+    @Override
+    public List<Boolean> openCapsules(List<CapsuleOpening> openings) throws Exception {
+        log.info("Opening {} capsules on blockchain in one transaction", openings.size());
+        
+        // TODO: Send the openings as one multicall to the contract when the Solidity contract is ready
+        // This is a placeholder for the future implementation
+        
+        // Mock implementation for development
+        return new ArrayList<>(Collections.nCopies(openings.size(), true));
+    }
+
     @Override
     public boolean isCapsuleReadyToOpen(String blockchainId) throws Exception {
         log.info("Checking if capsule {} is ready to open", blockchainId);
@@ -91,4 +143,16 @@ public class Web3jBlockchainService implements BlockchainService {
         // Mock implementation for development
         return Capsule.CapsuleStatus.SEALED;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return The JSON-RPC latency histograms by method
+     */
+    public Map<String, LatencyHistogram> getRpcLatencies() {
+        return rpcService.getLatencies();
+    }
+
+    // Unique across batches and instances, unlike a timestamp
+    private static String placeholderId() {
+        return "bc_" + UUID.randomUUID();
+    }
+}
@@ -0,0 +1,115 @@
+package io.aionios.blockchain;
+
+import io.aionios.model.Capsule;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads TimeCapsule contract events from an Ethereum node with eth_getLogs.
+ * Currently disabled in favor of the mock implementation, like
+ * {@link Web3jBlockchainService}.
+ */
+@Slf4j
+public class Web3jChainEventSource implements ChainEventSource {
+
+    // Event signatures of the TimeCapsule contract; the capsule id is the first indexed topic
+    static final Event CAPSULE_CREATED = new Event("CapsuleCreated", List.of(
+            new TypeReference<Uint256>(true) { },
+            new TypeReference<Address>(true) { },
+            new TypeReference<Address>(true) { }));
+    static final Event CAPSULE_OPENED = new Event("CapsuleOpened", List.of(
+            new TypeReference<Uint256>(true) { },
+            new TypeReference<Address>(true) { }));
+
+    private static final String CAPSULE_CREATED_TOPIC = EventEncoder.encode(CAPSULE_CREATED);
+    private static final String CAPSULE_OPENED_TOPIC = EventEncoder.encode(CAPSULE_OPENED);
+
+    private final Web3j web3j;
+    private final String contractAddress;
+
+    public Web3jChainEventSource(Web3j web3j, String contractAddress) {
+        this.web3j = web3j;
+        this.contractAddress = contractAddress;
+    }
+
+    @Override
+    public long getLatestBlockNumber() throws Exception {
+        return web3j.ethBlockNumber().send().getBlockNumber().longValueExact();
+    }
+
+    @Override
+    public String getBlockHash(long blockNumber) throws Exception {
+        EthBlock.Block block = web3j.ethGetBlockByNumber(
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber)), false).send().getBlock();
+        return block != null ? block.getHash() : null;
+    }
+
+    @Override
+    public List<ChainEvent> getEvents(long fromBlock, long toBlock) throws Exception {
+        EthFilter filter = new EthFilter(
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(fromBlock)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(toBlock)),
+                contractAddress);
+        // Either event signature as the first topic
+        filter.addOptionalTopics(CAPSULE_CREATED_TOPIC, CAPSULE_OPENED_TOPIC);
+
+        EthLog response = web3j.ethGetLogs(filter).send();
+        if (response.hasError()) {
+            // Nodes cap the number of logs per call, so retry a busy range in halves
+            if (fromBlock < toBlock) {
+                long middle = fromBlock + (toBlock - fromBlock) / 2;
+                log.debug("Splitting log query {}-{}: {}", fromBlock, toBlock, response.getError().getMessage());
+                List<ChainEvent> events = new ArrayList<>(getEvents(fromBlock, middle));
+                events.addAll(getEvents(middle + 1, toBlock));
+                return events;
+            }
+            throw new IOException("eth_getLogs failed for block " + fromBlock + ": " + response.getError().getMessage());
+        }
+
+        List<ChainEvent> events = new ArrayList<>(response.getLogs().size());
+        for (EthLog.LogResult<?> result : response.getLogs()) {
+            ChainEvent event = decode((Log) result.get());
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static ChainEvent decode(Log entry) {
+        List<String> topics = entry.getTopics();
+        if (entry.isRemoved() || topics.size() < 2) {
+            return null;
+        }
+
+        Capsule.CapsuleStatus status;
+        if (CAPSULE_CREATED_TOPIC.equals(topics.get(0))) {
+            status = Capsule.CapsuleStatus.SEALED;
+        } else if (CAPSULE_OPENED_TOPIC.equals(topics.get(0))) {
+            status = Capsule.CapsuleStatus.OPENED;
+        } else {
+            return null;
+        }
+        return new ChainEvent(
+                entry.getBlockNumber().longValueExact(),
+                entry.getLogIndex().intValueExact(),
+                Numeric.toBigInt(topics.get(1)).toString(),
+                status);
+    }
+}
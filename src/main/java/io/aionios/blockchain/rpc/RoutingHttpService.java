@@ -0,0 +1,183 @@
+package io.aionios.blockchain.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.web3j.protocol.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Web3j transport over a pool of JSON-RPC endpoints sharing one tuned OkHttp
+ * client. Each call goes to the available endpoint with the lowest moving
+ * average latency and fails over to the next one on I/O errors or 5xx/429
+ * responses; endpoints that keep failing are skipped by their circuit
+ * breaker. Latencies are recorded per JSON-RPC method.
+ */
+@Slf4j
+public class RoutingHttpService extends Service {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final OkHttpClient httpClient;
+    private final List<RpcEndpoint> endpoints;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * @param settings The connection pool, timeout and circuit breaker settings
+     * @param urls The JSON-RPC endpoints, in order of preference until latencies are known
+     */
+    public RoutingHttpService(Settings settings, List<String> urls) {
+        super(false);
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one JSON-RPC endpoint is required");
+        }
+        this.httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(settings.maxIdleConnections(), settings.keepAliveMillis(), TimeUnit.MILLISECONDS))
+                .connectTimeout(Duration.ofMillis(settings.connectTimeoutMillis()))
+                .readTimeout(Duration.ofMillis(settings.readTimeoutMillis()))
+                .retryOnConnectionFailure(true)
+                .build();
+        List<RpcEndpoint> pool = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            pool.add(new RpcEndpoint(url.trim(), settings.failureThreshold(), settings.openCircuitMillis()));
+        }
+        this.endpoints = Collections.unmodifiableList(pool);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <T extends org.web3j.protocol.core.Response> T send(
+            org.web3j.protocol.core.Request request, Class<T> responseType) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.send(request, responseType);
+        } finally {
+            record(request.getMethod(), System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        RequestBody body = RequestBody.create(payload, JSON);
+        IOException lastError = null;
+
+        for (RpcEndpoint endpoint : byLatency()) {
+            if (!endpoint.tryAcquire(System.currentTimeMillis())) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try (Response response = httpClient.newCall(new Request.Builder().url(endpoint.getUrl()).post(body).build()).execute()) {
+                if (response.code() >= 500 || response.code() == 429) {
+                    throw new IOException("HTTP " + response.code() + " from " + endpoint);
+                }
+                ResponseBody responseBody = response.body();
+                if (!response.isSuccessful() || responseBody == null) {
+                    // Client errors would fail the same way on every endpoint
+                    endpoint.recordSuccess(System.nanoTime() - start);
+                    throw new ClientErrorException("HTTP " + response.code() + " from " + endpoint);
+                }
+                // Read the whole body here, so a failure mid-response can still fail over
+                byte[] content = responseBody.bytes();
+                endpoint.recordSuccess(System.nanoTime() - start);
+                return new ByteArrayInputStream(content);
+            } catch (ClientErrorException e) {
+                throw e;
+            } catch (IOException e) {
+                // Timeouts count with the time they took, so a slow endpoint loses its rank
+                endpoint.recordFailure(System.currentTimeMillis(), System.nanoTime() - start);
+                if (endpoint.isOpen()) {
+                    log.warn("JSON-RPC endpoint {} failed, circuit open", endpoint, e);
+                } else {
+                    log.debug("JSON-RPC call to {} failed, trying the next endpoint", endpoint, e);
+                }
+                lastError = e;
+            } catch (RuntimeException e) {
+                endpoint.recordFailure(System.currentTimeMillis(), System.nanoTime() - start);
+                throw e;
+            }
+        }
+
+        throw lastError != null ? lastError : new IOException("No JSON-RPC endpoint available, all circuits are open");
+    }
+
+    /**
+     * @return The latency histograms by JSON-RPC method
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    public List<RpcEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public void close() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * @return The endpoints with closed circuits first, each group fastest first
+     */
+    private List<RpcEndpoint> byLatency() {
+        // Sort a snapshot, since the latencies keep changing under concurrent calls
+        List<Ranked> ranked = new ArrayList<>(endpoints.size());
+        for (RpcEndpoint endpoint : endpoints) {
+            ranked.add(new Ranked(endpoint, endpoint.isOpen(), endpoint.getAverageLatencyNanos()));
+        }
+        ranked.sort(Comparator.comparing(Ranked::open).thenComparingDouble(Ranked::latencyNanos));
+        return ranked.stream().map(Ranked::endpoint).toList();
+    }
+
+    private void record(String method, long nanos) {
+        latencies.computeIfAbsent(method, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Connection pool, timeout and circuit breaker settings.
+     *
+     * @param maxIdleConnections Idle connections kept open per pool
+     * @param keepAliveMillis How long an idle connection is kept
+     * @param connectTimeoutMillis Timeout for opening a connection
+     * @param readTimeoutMillis Timeout for each read of a response
+     * @param failureThreshold Consecutive failures that open an endpoint's circuit
+     * @param openCircuitMillis How long an open circuit skips its endpoint
+     */
+    public record Settings(
+            int maxIdleConnections,
+            long keepAliveMillis,
+            long connectTimeoutMillis,
+            long readTimeoutMillis,
+            int failureThreshold,
+            long openCircuitMillis) {
+    }
+
+    private record Ranked(RpcEndpoint endpoint, boolean open, double latencyNanos) {
+    }
+
+    private static class ClientErrorException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ClientErrorException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.aionios.blockchain.rpc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A JSON-RPC node with its observed latency and a circuit breaker. After
+ * {@code failureThreshold} consecutive failures the circuit opens and the
+ * endpoint is skipped for {@code openMillis}; then a single trial call is let
+ * through, which closes the circuit again if it succeeds.
+ */
+public class RpcEndpoint {
+
+    // Weight of the latest call in the moving average
+    private static final double ALPHA = 0.2;
+
+    private final String url;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    private volatile long openUntil;
+    private volatile double averageLatencyNanos;
+
+    public RpcEndpoint(String url, int failureThreshold, long openMillis) {
+        this.url = url;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The moving average latency of successful and failed calls, 0 until the first call
+     */
+    public double getAverageLatencyNanos() {
+        return averageLatencyNanos;
+    }
+
+    public boolean isOpen() {
+        return consecutiveFailures.get() >= failureThreshold;
+    }
+
+    /**
+     * @return true if a call may be sent to this endpoint now. For an open
+     *         circuit past its cool-down this claims the single trial call.
+     */
+    public boolean tryAcquire(long nowMillis) {
+        if (!isOpen()) {
+            return true;
+        }
+        return nowMillis >= openUntil && trialInFlight.compareAndSet(false, true);
+    }
+
+    public void recordSuccess(long latencyNanos) {
+        recordLatency(latencyNanos);
+        consecutiveFailures.set(0);
+        trialInFlight.set(false);
+    }
+
+    /**
+     * @param latencyNanos How long the call took to fail, so an endpoint that
+     *                     recovers from being slow is ranked by its recent calls
+     */
+    public void recordFailure(long nowMillis, long latencyNanos) {
+        recordLatency(latencyNanos);
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil = nowMillis + openMillis;
+        }
+        trialInFlight.set(false);
+    }
+
+    private void recordLatency(long latencyNanos) {
+        double average = averageLatencyNanos;
+        averageLatencyNanos = average == 0 ? latencyNanos : average + ALPHA * (latencyNanos - average);
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
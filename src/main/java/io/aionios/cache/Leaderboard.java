@@ -0,0 +1,159 @@
+package io.aionios.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe top-N ranking of values by score, ties broken by the higher
+ * id. Updates are O(log N), and values that rank below a full board are
+ * dropped. Readers get an immutable snapshot that is only rebuilt after the
+ * board has changed.
+ *
+ * @param <T> The value type
+ */
+public class Leaderboard<T> {
+
+    private static final Comparator<Entry<?>> RANKING = Comparator
+            .comparingLong((Entry<?> entry) -> entry.score()).reversed()
+            .thenComparing(Comparator.comparingLong((Entry<?> entry) -> entry.id()).reversed());
+
+    private final int capacity;
+    private final TreeSet<Entry<T>> ranking = new TreeSet<>(RANKING);
+    private final Map<Long, Entry<T>> entries = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile long version;
+    private volatile Snapshot<T> snapshot = new Snapshot<>(0, List.of());
+
+    /**
+     * @param capacity The number of values kept
+     */
+    public Leaderboard(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the score and value for an id, adding it if it ranks high enough
+     *
+     * @return true if the board changed
+     */
+    public boolean update(long id, long score, T value) {
+        lock.lock();
+        try {
+            Entry<T> entry = new Entry<>(id, score, value);
+            Entry<T> existing = entries.remove(id);
+            if (existing != null) {
+                ranking.remove(existing);
+            } else if (ranking.size() >= capacity && RANKING.compare(entry, ranking.last()) > 0) {
+                return false;
+            }
+
+            ranking.add(entry);
+            entries.put(id, entry);
+            if (ranking.size() > capacity) {
+                entries.remove(ranking.pollLast().id());
+            }
+            version++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the id was on the board
+     */
+    public boolean remove(long id) {
+        lock.lock();
+        try {
+            Entry<T> existing = entries.remove(id);
+            if (existing == null) {
+                return false;
+            }
+            ranking.remove(existing);
+            version++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole board, e.g. after reloading it from the database
+     *
+     * @param scores The ids with their scores
+     * @param values The values by id
+     */
+    public void reset(Map<Long, Long> scores, Map<Long, T> values) {
+        lock.lock();
+        try {
+            ranking.clear();
+            entries.clear();
+            version++;
+            scores.forEach((id, score) -> update(id, score, values.get(id)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean contains(long id) {
+        lock.lock();
+        try {
+            return entries.containsKey(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The values in rank order, tagged with the board's version
+     */
+    public Snapshot<T> snapshot() {
+        Snapshot<T> current = snapshot;
+        if (current.version() == version) {
+            return current;
+        }
+
+        lock.lock();
+        try {
+            if (snapshot.version() != version) {
+                List<T> values = new ArrayList<>(ranking.size());
+                for (Entry<T> entry : ranking) {
+                    values.add(entry.value());
+                }
+                snapshot = new Snapshot<>(version, List.copyOf(values));
+            }
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param version Changes whenever the board changes
+     * @param values The values in rank order
+     */
+    public record Snapshot<T>(long version, List<T> values) {
+    }
+
+    private record Entry<T>(long id, long score, T value) {
+    }
+}
@@ -0,0 +1,174 @@
+package io.aionios.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe LRU cache bounded by the total weight of its entries rather
+ * than their count. Entries are weighed once when inserted, and the least
+ * recently used entries are evicted until the total fits the capacity again.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class WeightedLruCache<K, V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final BiConsumer<K, V> evictionListener;
+
+    private final LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long totalWeight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxWeight The maximum total weight of all entries
+     * @param weigher Computes the weight of a value
+     * @param evictionListener Called outside the lock for every evicted or replaced entry
+     */
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+    }
+
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this(maxWeight, weigher, (key, value) -> { });
+    }
+
+    public V get(K key) {
+        lock.lock();
+        try {
+            Weighted<V> entry = entries.get(key);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean containsKey(K key) {
+        lock.lock();
+        try {
+            return entries.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an entry. A value heavier than the whole cache is not stored and is
+     * handed straight to the eviction listener.
+     */
+    public void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        lock.lock();
+        try {
+            if (weight > maxWeight) {
+                evicted.add(Map.entry(key, value));
+            } else {
+                Weighted<V> previous = entries.put(key, new Weighted<>(value, weight));
+                totalWeight += weight;
+                if (previous != null) {
+                    totalWeight -= previous.weight();
+                    evicted.add(Map.entry(key, previous.value()));
+                }
+                Iterator<Map.Entry<K, Weighted<V>>> it = entries.entrySet().iterator();
+                while (totalWeight > maxWeight && it.hasNext()) {
+                    Map.Entry<K, Weighted<V>> eldest = it.next();
+                    it.remove();
+                    totalWeight -= eldest.getValue().weight();
+                    evictions.incrementAndGet();
+                    evicted.add(Map.entry(eldest.getKey(), eldest.getValue().value()));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        evicted.forEach(entry -> evictionListener.accept(entry.getKey(), entry.getValue()));
+    }
+
+    public V remove(K key) {
+        Weighted<V> removed;
+        lock.lock();
+        try {
+            removed = entries.remove(key);
+            if (removed != null) {
+                totalWeight -= removed.weight();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removed == null) {
+            return null;
+        }
+        evictionListener.accept(key, removed.value());
+        return removed.value();
+    }
+
+    public void clear() {
+        List<Map.Entry<K, V>> removed = new ArrayList<>();
+        lock.lock();
+        try {
+            entries.forEach((key, entry) -> removed.add(Map.entry(key, entry.value())));
+            entries.clear();
+            totalWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+        removed.forEach(entry -> evictionListener.accept(entry.getKey(), entry.getValue()));
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWeight() {
+        lock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private record Weighted<V>(V value, long weight) {
+    }
+}
@@ -0,0 +1,157 @@
+package io.aionios.condition;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A capsule's opening condition, compiled from its {@code conditionData}
+ * once and evaluated against inputs that are read for a whole batch of
+ * capsules at a time.
+ */
+public sealed interface Condition {
+
+    /**
+     * @param capsuleId The capsule the condition belongs to
+     * @param inputs The time, oracle values and approvals to evaluate against
+     * @return Whether the capsule may be opened
+     */
+    boolean test(Long capsuleId, ConditionInputs inputs);
+
+    /**
+     * Calls the visitor for this condition and every condition nested in it
+     */
+    default void visit(Consumer<Condition> visitor) {
+        visitor.accept(this);
+    }
+
+    /**
+     * Met once the open date has passed
+     */
+    record Time(LocalDateTime openDate) implements Condition {
+
+        @Override
+        public boolean test(Long capsuleId, ConditionInputs inputs) {
+            return !openDate.isAfter(inputs.now());
+        }
+    }
+
+    /**
+     * Met while the latest value of an oracle feed compares to the threshold
+     * as required. Unknown feed values never meet it.
+     */
+    record Oracle(String feed, Comparison comparison, BigDecimal threshold) implements Condition {
+
+        @Override
+        public boolean test(Long capsuleId, ConditionInputs inputs) {
+            BigDecimal value = inputs.oracleValues().get(feed);
+            return value != null && comparison.test(value.compareTo(threshold));
+        }
+    }
+
+    /**
+     * Met once at least {@code threshold} of the signers approved the capsule
+     *
+     * @param signers The signers' address keys, see {@link io.aionios.model.Capsule#addressKey}
+     */
+    record Multisig(Set<String> signers, int threshold) implements Condition {
+
+        @Override
+        public boolean test(Long capsuleId, ConditionInputs inputs) {
+            Set<String> approvals = inputs.approvals().getOrDefault(capsuleId, Set.of());
+            int approved = 0;
+            for (String signer : approvals) {
+                if (signers.contains(signer) && ++approved >= threshold) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Met when all of the conditions are met
+     */
+    record All(List<Condition> conditions) implements Condition {
+
+        @Override
+        public boolean test(Long capsuleId, ConditionInputs inputs) {
+            for (Condition condition : conditions) {
+                if (!condition.test(capsuleId, inputs)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void visit(Consumer<Condition> visitor) {
+            visitor.accept(this);
+            conditions.forEach(condition -> condition.visit(visitor));
+        }
+    }
+
+    /**
+     * Met when any of the conditions is met
+     */
+    record Any(List<Condition> conditions) implements Condition {
+
+        @Override
+        public boolean test(Long capsuleId, ConditionInputs inputs) {
+            for (Condition condition : conditions) {
+                if (condition.test(capsuleId, inputs)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void visit(Consumer<Condition> visitor) {
+            visitor.accept(this);
+            conditions.forEach(condition -> condition.visit(visitor));
+        }
+    }
+
+    enum Comparison {
+        GT(">"),
+        GTE(">="),
+        LT("<"),
+        LTE("<="),
+        EQ("==");
+
+        private final String symbol;
+
+        Comparison(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * @param order The result of comparing the value to the threshold
+         */
+        public boolean test(int order) {
+            return switch (this) {
+                case GT -> order > 0;
+                case GTE -> order >= 0;
+                case LT -> order < 0;
+                case LTE -> order <= 0;
+                case EQ -> order == 0;
+            };
+        }
+
+        public static Comparison of(String symbol) {
+            for (Comparison comparison : values()) {
+                if (comparison.symbol.equals(symbol)) {
+                    return comparison;
+                }
+            }
+            throw new IllegalArgumentException("Unknown comparison: " + symbol);
+        }
+    }
+}
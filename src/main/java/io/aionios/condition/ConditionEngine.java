@@ -0,0 +1,266 @@
+package io.aionios.condition;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.aionios.cache.WeightedLruCache;
+import io.aionios.model.Capsule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compiles capsule conditions and evaluates them in batches. The
+ * {@code conditionData} of a capsule is parsed once into a {@link Condition}
+ * tree and cached by capsule id. Capsules are evaluated in batches: a round
+ * of batches reads each oracle feed once, and each batch looks up the
+ * approvals of all its MULTISIG capsules in one call.
+ * <p>
+ * Condition data is JSON:
+ * <ul>
+ *   <li>ORACLE: {@code {"feed": "ETH/USD", "op": ">=", "value": 4000}}</li>
+ *   <li>MULTISIG: {@code {"signers": ["0x...", "0x..."], "threshold": 2}}</li>
+ *   <li>COMPOUND: {@code {"all": [...]}} or {@code {"any": [...]}} of nested
+ *       conditions. An element may name its type with a {@code "type"} field;
+ *       {@code {"type": "TIME"}} uses the capsule's open date unless it has
+ *       its own {@code openDate}.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class ConditionEngine {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<OracleValueSource> oracleValueSource;
+    private final ObjectProvider<MultisigApprovalSource> approvalSource;
+    private final WeightedLruCache<Long, Compiled> compiled;
+
+    public ConditionEngine(
+            ObjectMapper objectMapper,
+            ObjectProvider<OracleValueSource> oracleValueSource,
+            ObjectProvider<MultisigApprovalSource> approvalSource,
+            @Value("${capsule.conditions.cache-size:100000}") long cacheSize) {
+        this.objectMapper = objectMapper;
+        this.oracleValueSource = oracleValueSource;
+        this.approvalSource = approvalSource;
+        this.compiled = new WeightedLruCache<>(cacheSize, entry -> 1);
+    }
+
+    /**
+     * Compiles a capsule's condition, or returns the one compiled before
+     *
+     * @throws IllegalArgumentException If the condition data is invalid
+     */
+    public Condition compile(Capsule capsule) {
+        return compile(capsule.getId(), capsule.getConditionType(), capsule.getConditionData(), capsule.getOpenDate());
+    }
+
+    /**
+     * @param capsuleId The capsule id to cache the result under, or null to not cache it
+     * @throws IllegalArgumentException If the condition data is invalid
+     */
+    public Condition compile(Long capsuleId, Capsule.ConditionType type, String conditionData, LocalDateTime openDate) {
+        if (capsuleId != null) {
+            Compiled cached = compiled.get(capsuleId);
+            if (cached != null && cached.type() == type
+                    && Objects.equals(cached.data(), conditionData)
+                    && Objects.equals(cached.openDate(), openDate)) {
+                return cached.condition();
+            }
+        }
+
+        Condition condition;
+        if (type == Capsule.ConditionType.TIME) {
+            condition = time(openDate);
+        } else {
+            try {
+                condition = parse(objectMapper.readTree(conditionData == null ? "" : conditionData), type, openDate);
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid " + type + " condition data", e);
+            }
+        }
+        if (capsuleId != null) {
+            compiled.put(capsuleId, new Compiled(type, conditionData, openDate, condition));
+        }
+        return condition;
+    }
+
+    /**
+     * Evaluates one capsule's condition against fresh inputs
+     */
+    public boolean isMet(Capsule capsule) {
+        return evaluate(Map.of(capsule.getId(), compile(capsule)), newRound()).contains(capsule.getId());
+    }
+
+    /**
+     * Starts a round of batches evaluated at the same time, which reads each
+     * oracle feed at most once however many batches refer to it
+     */
+    public Round newRound() {
+        return new Round(LocalDateTime.now());
+    }
+
+    /**
+     * Evaluates the conditions of a batch of capsules against inputs read
+     * once for the whole batch
+     *
+     * @param conditions The compiled condition of each capsule
+     * @param round The round the batch belongs to
+     * @return The ids of the capsules whose condition is met
+     */
+    public List<Long> evaluate(Map<Long, Condition> conditions, Round round) {
+        if (conditions.isEmpty()) {
+            return List.of();
+        }
+        ConditionInputs inputs = readInputs(conditions, round);
+        List<Long> met = new ArrayList<>();
+        conditions.forEach((capsuleId, condition) -> {
+            if (condition.test(capsuleId, inputs)) {
+                met.add(capsuleId);
+            }
+        });
+        return met;
+    }
+
+    /**
+     * Forgets a capsule's compiled condition
+     */
+    public void evict(Long capsuleId) {
+        compiled.remove(capsuleId);
+    }
+
+    private ConditionInputs readInputs(Map<Long, Condition> conditions, Round round) {
+        Set<String> feeds = new HashSet<>();
+        Set<Long> multisigCapsules = new HashSet<>();
+        conditions.forEach((capsuleId, condition) -> condition.visit(node -> {
+            if (node instanceof Condition.Oracle oracle && !round.readFeeds.contains(oracle.feed())) {
+                feeds.add(oracle.feed());
+            } else if (node instanceof Condition.Multisig) {
+                multisigCapsules.add(capsuleId);
+            }
+        }));
+
+        if (!feeds.isEmpty()) {
+            OracleValueSource source = oracleValueSource.getIfAvailable();
+            if (source != null) {
+                round.oracleValues.putAll(source.getValues(feeds));
+            } else {
+                log.warn("No oracle value source for feeds {}", feeds);
+            }
+            round.readFeeds.addAll(feeds);
+        }
+        Map<Long, Set<String>> approvals = Map.of();
+        if (!multisigCapsules.isEmpty()) {
+            MultisigApprovalSource source = approvalSource.getIfAvailable();
+            if (source != null) {
+                approvals = source.getApprovals(multisigCapsules);
+            } else {
+                log.warn("No multisig approval source for {} capsules", multisigCapsules.size());
+            }
+        }
+        return new ConditionInputs(round.now, round.oracleValues, approvals);
+    }
+
+    private Condition parse(JsonNode node, Capsule.ConditionType type, LocalDateTime openDate) {
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("A " + type + " condition must be a JSON object");
+        }
+        return switch (type) {
+            case TIME -> node.hasNonNull("openDate")
+                    ? time(LocalDateTime.parse(node.get("openDate").asText()))
+                    : time(openDate);
+            case ORACLE -> new Condition.Oracle(
+                    text(node, "feed"),
+                    Condition.Comparison.of(node.hasNonNull("op") ? node.get("op").asText() : ">="),
+                    new BigDecimal(text(node, "value")));
+            case MULTISIG -> multisig(node);
+            case COMPOUND -> compound(node, openDate);
+        };
+    }
+
+    private Condition compound(JsonNode node, LocalDateTime openDate) {
+        boolean all = node.has("all");
+        JsonNode children = all ? node.get("all") : node.get("any");
+        if (children == null || !children.isArray() || children.isEmpty()) {
+            throw new IllegalArgumentException("A COMPOUND condition needs a non-empty \"all\" or \"any\" array");
+        }
+        List<Condition> conditions = new ArrayList<>(children.size());
+        for (JsonNode child : children) {
+            conditions.add(parse(child, childType(child), openDate));
+        }
+        return all ? new Condition.All(List.copyOf(conditions)) : new Condition.Any(List.copyOf(conditions));
+    }
+
+    private static Capsule.ConditionType childType(JsonNode child) {
+        if (child.hasNonNull("type")) {
+            return Capsule.ConditionType.valueOf(child.get("type").asText());
+        }
+        if (child.has("all") || child.has("any")) {
+            return Capsule.ConditionType.COMPOUND;
+        }
+        if (child.has("feed")) {
+            return Capsule.ConditionType.ORACLE;
+        }
+        if (child.has("signers")) {
+            return Capsule.ConditionType.MULTISIG;
+        }
+        throw new IllegalArgumentException("Can't tell the type of condition " + child);
+    }
+
+    private static Condition multisig(JsonNode node) {
+        JsonNode signerList = node.get("signers");
+        if (signerList == null || !signerList.isArray() || signerList.isEmpty()) {
+            throw new IllegalArgumentException("A MULTISIG condition needs a non-empty \"signers\" array");
+        }
+        Set<String> signers = new HashSet<>();
+        signerList.forEach(signer -> signers.add(Capsule.addressKey(signer.asText())));
+        int threshold = node.hasNonNull("threshold") ? node.get("threshold").asInt() : signers.size();
+        if (threshold < 1 || threshold > signers.size()) {
+            throw new IllegalArgumentException("A MULTISIG threshold must be between 1 and the number of signers");
+        }
+        return new Condition.Multisig(Set.copyOf(signers), threshold);
+    }
+
+    private static Condition time(LocalDateTime openDate) {
+        if (openDate == null) {
+            throw new IllegalArgumentException("A TIME condition needs an open date");
+        }
+        return new Condition.Time(openDate);
+    }
+
+    private static String text(JsonNode node, String field) {
+        if (!node.hasNonNull(field)) {
+            throw new IllegalArgumentException("Condition is missing \"" + field + "\"");
+        }
+        return node.get(field).asText();
+    }
+
+    /**
+     * Inputs shared by the batches of one evaluation round
+     */
+    public static final class Round {
+
+        private final LocalDateTime now;
+        private final Map<String, BigDecimal> oracleValues = new HashMap<>();
+        private final Set<String> readFeeds = new HashSet<>();
+
+        private Round(LocalDateTime now) {
+            this.now = now;
+        }
+    }
+
+    private record Compiled(Capsule.ConditionType type, String data, LocalDateTime openDate, Condition condition) {
+    }
+}
@@ -0,0 +1,20 @@
+package io.aionios.condition;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything conditions are evaluated against, read once per batch of
+ * capsules.
+ *
+ * @param now The current time
+ * @param oracleValues The latest value of each feed the batch refers to
+ * @param approvals The address keys of the signers that approved each capsule
+ */
+public record ConditionInputs(
+        LocalDateTime now,
+        Map<String, BigDecimal> oracleValues,
+        Map<Long, Set<String>> approvals) {
+}
@@ -0,0 +1,17 @@
+package io.aionios.condition;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides the signer approvals collected for MULTISIG conditions.
+ */
+public interface MultisigApprovalSource {
+
+    /**
+     * @param capsuleIds The capsules to look up
+     * @return For each capsule with approvals, the address keys of the signers that approved it
+     */
+    Map<Long, Set<String>> getApprovals(Collection<Long> capsuleIds);
+}
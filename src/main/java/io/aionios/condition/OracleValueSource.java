@@ -0,0 +1,17 @@
+package io.aionios.condition;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides the latest values of oracle feeds to ORACLE conditions.
+ */
+public interface OracleValueSource {
+
+    /**
+     * @param feeds The feeds to read
+     * @return The latest value of each feed that has one
+     */
+    Map<String, BigDecimal> getValues(Set<String> feeds);
+}
@@ -3,17 +3,42 @@ package io.aionios.config;
 import io.aionios.blockchain.BlockchainService;
 import io.aionios.blockchain.MockBlockchainService;
 import io.aionios.service.IPFSService;
-import io.aionios.service.impl.MockIPFSServiceImpl;
+import io.aionios.service.impl.CachingIPFSService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 @Configuration
 public class BeanConfig {
 
-    // Removed duplicated IPFSService bean definition to resolve conflict
-    // MockIPFSServiceImpl is already defined as a @Service with @Primary
-
     // Removed duplicated BlockchainService bean definition to resolve conflict
     // MockBlockchainService is already defined as a @Service with @Primary
+
+    /**
+     * Caches IPFS content in front of the IPFSService implementation selected
+     * by ipfs.implementation. Without the cache that bean is used directly.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "ipfs.cache.enabled", havingValue = "true")
+    public IPFSService cachingIpfsService(
+            @Qualifier("ipfsDelegate") IPFSService ipfsService,
+            @Value("${ipfs.cache.memory-max-bytes}") long memoryMaxBytes,
+            @Value("${ipfs.cache.memory-entry-max-bytes}") long memoryEntryMaxBytes,
+            @Value("${ipfs.cache.disk-max-bytes}") long diskMaxBytes,
+            @Value("${ipfs.cache.directory:}") String directory,
+            ExecutionMode executionMode) throws IOException {
+        Path cacheDirectory = directory.isBlank()
+                ? Files.createTempDirectory("aionios-ipfs-cache")
+                : Files.createDirectories(Path.of(directory));
+        return new CachingIPFSService(ipfsService, memoryMaxBytes, memoryEntryMaxBytes, diskMaxBytes, cacheDirectory,
+                executionMode.threadFactory("ipfs-cache-fill"));
+    }
 }
@@ -0,0 +1,65 @@
+package io.aionios.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Whether blocking work runs on platform or virtual threads. With
+ * {@code spring.threads.virtual.enabled} on Java 21 or later, Spring Boot runs
+ * request handling and scheduled jobs on virtual threads, and the thread
+ * pools of the blockchain batcher, the capsule outbox and the IPFS cache
+ * create virtual threads too. Otherwise, including on older JVMs, everything
+ * stays on platform threads.
+ */
+@Component
+@Slf4j
+public class ExecutionMode {
+
+    private final boolean virtual;
+
+    public ExecutionMode(Environment environment) {
+        this.virtual = Threading.VIRTUAL.isActive(environment);
+        log.info("Blocking work runs on {} threads", virtual ? "virtual" : "platform");
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @param name The name of the threads, a sequence number is appended to virtual ones
+     * @return A factory of virtual threads, or of daemon platform threads
+     */
+    public ThreadFactory threadFactory(String name) {
+        if (virtual) {
+            return new VirtualThreadTaskExecutor(name + "-").getVirtualThreadFactory();
+        }
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a pool for blocking tasks whose concurrency the caller already
+     * limits. Platform threads are capped at {@code platformThreads}; virtual
+     * threads are cheap enough to start one per task.
+     *
+     * @param name The name of the threads
+     * @param platformThreads The number of threads when running on platform threads
+     */
+    public ExecutorService newBlockingExecutor(String name, int platformThreads) {
+        if (virtual) {
+            return Executors.newCachedThreadPool(threadFactory(name));
+        }
+        return Executors.newFixedThreadPool(platformThreads, threadFactory(name));
+    }
+}
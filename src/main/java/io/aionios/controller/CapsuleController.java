@@ -1,16 +1,30 @@
 package io.aionios.controller;
 
+import io.aionios.dto.CapsuleSummary;
 import io.aionios.model.Capsule;
+import io.aionios.multisig.MultisigApprovalService;
 import io.aionios.service.CapsuleService;
+import io.aionios.service.IPFSService;
+import io.aionios.service.LeaderboardService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/capsules")
@@ -19,19 +33,34 @@ import java.util.List;
 @CrossOrigin
 public class CapsuleController {
 
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final CapsuleService capsuleService;
+    private final IPFSService ipfsService;
+    private final LeaderboardService leaderboardService;
+    private final MultisigApprovalService multisigApprovalService;
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Capsule> createCapsule(@RequestPart("capsule") Capsule capsule,
-                                                @RequestPart(value = "content", required = false) MultipartFile content) {
+                                                @RequestPart(value = "content", required = false) MultipartFile content,
+                                                @RequestParam(defaultValue = "false") boolean async) {
         log.info("Creating new capsule: {}", capsule.getTitle());
+        if (async) {
+            // The capsule's status can be followed at the returned location
+            Capsule pendingCapsule = capsuleService.submitCapsule(capsule, content);
+            URI location = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                    .path("/{id}")
+                    .buildAndExpand(pendingCapsule.getId())
+                    .toUri();
+            return ResponseEntity.accepted().location(location).body(pendingCapsule);
+        }
         Capsule createdCapsule = capsuleService.createCapsule(capsule, content);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdCapsule);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Capsule> getCapsuleById(@PathVariable Long id) {
-        log.info("Fetching capsule by ID: {}", id);
+        log.debug("Fetching capsule by ID: {}", id);
         return capsuleService.getCapsuleById(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -39,31 +68,116 @@ public class CapsuleController {
 
     @GetMapping("/blockchain/{blockchainId}")
     public ResponseEntity<Capsule> getCapsuleByBlockchainId(@PathVariable String blockchainId) {
-        log.info("Fetching capsule by blockchain ID: {}", blockchainId);
+        log.debug("Fetching capsule by blockchain ID: {}", blockchainId);
         return capsuleService.getCapsuleByBlockchainId(blockchainId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/content")
+    public ResponseEntity<StreamingResponseBody> getCapsuleContent(@PathVariable Long id,
+                                                                   @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) throws IOException {
+        log.debug("Fetching content for capsule: {} (range: {})", id, range);
+        Optional<Capsule> optionalCapsule = capsuleService.getCapsuleById(id);
+        if (optionalCapsule.isEmpty() || optionalCapsule.get().getIpfsHash() == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Capsule capsule = optionalCapsule.get();
+        if (capsule.getStatus() != Capsule.CapsuleStatus.OPENED) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        try {
+            return serveContent(capsule.getIpfsHash(), range);
+        } catch (FileNotFoundException e) {
+            // The capsule references content that IPFS doesn't have (any more)
+            log.warn("Content of capsule {} was not found on IPFS: {}", id, e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> serveContent(String ipfsHash, String range) throws IOException {
+        long size = ipfsService.getContentSize(ipfsHash);
+        if (range == null) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .contentLength(size)
+                    .body(streamContent(ipfsHash, 0, size));
+        }
+
+        // Only the first range is served; clients seeking through media ask for one at a time
+        long start;
+        long end;
+        try {
+            HttpRange httpRange = HttpRange.parseRanges(range).get(0);
+            start = httpRange.getRangeStart(size);
+            end = httpRange.getRangeEnd(size);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(end - start + 1)
+                .body(streamContent(ipfsHash, start, end - start + 1));
+    }
+
+    private StreamingResponseBody streamContent(String ipfsHash, long offset, long length) throws IOException {
+        // Opened before the response starts, so missing content can still be
+        // answered with a 404; then copied in small buffers to the response
+        InputStream in = ipfsService.openContent(ipfsHash, offset, length);
+        return out -> {
+            try (in) {
+                in.transferTo(out);
+            }
+        };
+    }
+
     @GetMapping("/creator/{address}")
-    public ResponseEntity<List<Capsule>> getCapsulesByCreator(@PathVariable String address) {
-        log.info("Fetching capsules by creator: {}", address);
-        List<Capsule> capsules = capsuleService.getCapsulesByCreator(address);
-        return ResponseEntity.ok(capsules);
+    public ResponseEntity<StreamingResponseBody> getCapsulesByCreator(@PathVariable String address,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestParam(defaultValue = "50") int limit) {
+        log.debug("Fetching capsules by creator: {} after {}", address, after);
+        return listSummaries(CapsuleService.AddressRole.CREATOR, address, after, limit);
     }
 
     @GetMapping("/recipient/{address}")
-    public ResponseEntity<List<Capsule>> getCapsulesByRecipient(@PathVariable String address) {
-        log.info("Fetching capsules by recipient: {}", address);
-        List<Capsule> capsules = capsuleService.getCapsulesByRecipient(address);
-        return ResponseEntity.ok(capsules);
+    public ResponseEntity<StreamingResponseBody> getCapsulesByRecipient(@PathVariable String address,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestParam(defaultValue = "50") int limit) {
+        log.debug("Fetching capsules by recipient: {} after {}", address, after);
+        return listSummaries(CapsuleService.AddressRole.RECIPIENT, address, after, limit);
     }
 
     @GetMapping("/address/{address}")
-    public ResponseEntity<List<Capsule>> getCapsulesByAddress(@PathVariable String address) {
-        log.info("Fetching capsules by address (creator or recipient): {}", address);
-        List<Capsule> capsules = capsuleService.getCapsulesByAddress(address);
-        return ResponseEntity.ok(capsules);
+    public ResponseEntity<StreamingResponseBody> getCapsulesByAddress(@PathVariable String address,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestParam(defaultValue = "50") int limit) {
+        log.debug("Fetching capsules by address (creator or recipient): {} after {}", address, after);
+        return listSummaries(CapsuleService.AddressRole.ANY, address, after, limit);
+    }
+
+    @GetMapping("/address/{address}/export")
+    public ResponseEntity<StreamingResponseBody> exportCapsules(@PathVariable String address) {
+        log.info("Exporting capsules of address: {}", address);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> capsuleService.exportCapsules(address, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> listSummaries(CapsuleService.AddressRole role, String address,
+                                                                Long after, int limit) {
+        // Rows are written as they are read, so a page is never held in memory
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> capsuleService.writeCapsuleSummaries(role, address, after, pageSize, out));
     }
 
     @PatchMapping("/{id}/status")
@@ -82,38 +196,59 @@ public class CapsuleController {
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.badRequest().build());
     }
+
+    @GetMapping(value = "/{id}/approvals/message", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getApprovalMessage(@PathVariable Long id) {
+        log.debug("Fetching approval message for capsule: {}", id);
+        return capsuleService.getCapsuleById(id)
+                .filter(capsule -> capsule.getBlockchainId() != null)
+                .map(capsule -> ResponseEntity.ok(multisigApprovalService.getApprovalMessage(id, capsule.getBlockchainId())))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{id}/approvals")
+    public CompletableFuture<ResponseEntity<MultisigApprovalService.ApprovalResult>> approveCapsule(@PathVariable Long id,
+                                                                                                  @RequestParam String signature) {
+        log.info("Approval submitted for capsule: {}", id);
+        // Signatures are verified in batches, so the request thread is released until the batch is recorded
+        return multisigApprovalService.approve(id, signature).thenApply(result -> ResponseEntity
+                .status(switch (result.status()) {
+                    case APPROVED, ALREADY_APPROVED -> HttpStatus.OK;
+                    case NOT_FOUND -> HttpStatus.NOT_FOUND;
+                    case NOT_A_SIGNER -> HttpStatus.FORBIDDEN;
+                    case INVALID_SIGNATURE -> HttpStatus.BAD_REQUEST;
+                })
+                .body(result));
+    }
     
     @GetMapping("/explore/popular")
-    public ResponseEntity<List<Capsule>> getPopularCapsules(@RequestParam(defaultValue = "10") int limit) {
-        log.info("Fetching popular capsules, limit: {}", limit);
-        List<Capsule> capsules = capsuleService.getPopularCapsules(limit);
-        return ResponseEntity.ok(capsules);
+    public ResponseEntity<byte[]> getPopularCapsules(@RequestParam(defaultValue = "10") int limit) {
+        log.debug("Fetching popular capsules, limit: {}", limit);
+        return explore(LeaderboardService.Board.POPULAR, limit);
     }
     
     @GetMapping("/explore/featured")
-    public ResponseEntity<List<Capsule>> getFeaturedCapsules() {
-        log.info("Fetching featured capsules");
-        List<Capsule> capsules = capsuleService.getFeaturedCapsules();
+    public ResponseEntity<List<CapsuleSummary>> getFeaturedCapsules() {
+        log.debug("Fetching featured capsules");
+        List<CapsuleSummary> capsules = capsuleService.getFeaturedCapsules();
         return ResponseEntity.ok(capsules);
     }
     
     @GetMapping("/explore/recent")
-    public ResponseEntity<List<Capsule>> getRecentlyOpenedCapsules(@RequestParam(defaultValue = "10") int limit) {
-        log.info("Fetching recently opened capsules, limit: {}", limit);
-        List<Capsule> capsules = capsuleService.getRecentlyOpenedCapsules(limit);
-        return ResponseEntity.ok(capsules);
+    public ResponseEntity<byte[]> getRecentlyOpenedCapsules(@RequestParam(defaultValue = "10") int limit) {
+        log.debug("Fetching recently opened capsules, limit: {}", limit);
+        return explore(LeaderboardService.Board.RECENTLY_OPENED, limit);
     }
     
     @GetMapping("/explore/subscribed")
-    public ResponseEntity<List<Capsule>> getMostSubscribedCapsules(@RequestParam(defaultValue = "10") int limit) {
-        log.info("Fetching most subscribed capsules, limit: {}", limit);
-        List<Capsule> capsules = capsuleService.getMostSubscribedCapsules(limit);
-        return ResponseEntity.ok(capsules);
+    public ResponseEntity<byte[]> getMostSubscribedCapsules(@RequestParam(defaultValue = "10") int limit) {
+        log.debug("Fetching most subscribed capsules, limit: {}", limit);
+        return explore(LeaderboardService.Board.MOST_SUBSCRIBED, limit);
     }
     
     @PostMapping("/{id}/view")
     public ResponseEntity<Capsule> incrementViewCount(@PathVariable Long id) {
-        log.info("Incrementing view count for capsule: {}", id);
+        log.debug("Incrementing view count for capsule: {}", id);
         return capsuleService.incrementViewCount(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -121,7 +256,7 @@ public class CapsuleController {
     
     @PostMapping("/{id}/share")
     public ResponseEntity<Capsule> incrementShareCount(@PathVariable Long id) {
-        log.info("Incrementing share count for capsule: {}", id);
+        log.debug("Incrementing share count for capsule: {}", id);
         return capsuleService.incrementShareCount(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -130,9 +265,16 @@ public class CapsuleController {
     @PostMapping("/{id}/subscribe")
     public ResponseEntity<Capsule> subscribeToCapsule(@PathVariable Long id, 
                                                    @RequestParam String userAddress) {
-        log.info("User {} subscribing to capsule: {}", userAddress, id);
+        log.debug("User {} subscribing to capsule: {}", userAddress, id);
         return capsuleService.subscribeToCapsule(id, userAddress)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    // Leaderboards are served as JSON rendered once per change
+    private ResponseEntity<byte[]> explore(LeaderboardService.Board board, int limit) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(leaderboardService.getTopCapsulesJson(board, limit));
+    }
 }
@@ -0,0 +1,57 @@
+package io.aionios.dto;
+
+import io.aionios.model.Capsule;
+
+import java.time.LocalDateTime;
+
+/**
+ * The fields of a capsule shown in list views. Queries select it with a
+ * constructor expression, so listing capsules never hydrates entities, their
+ * long text columns or their assets.
+ */
+public record CapsuleSummary(
+        Long id,
+        String title,
+        String blockchainId,
+        String creatorAddress,
+        String recipientAddress,
+        Capsule.CapsuleStatus status,
+        Capsule.ConditionType conditionType,
+        LocalDateTime createdAt,
+        LocalDateTime openDate,
+        LocalDateTime openedAt,
+        Integer viewCount,
+        Integer shareCount,
+        Integer subscriptionCount,
+        Boolean featured) {
+
+    /**
+     * JPQL select list matching the record's constructor, for {@code Capsule c}
+     */
+    public static final String SELECT = "SELECT new io.aionios.dto.CapsuleSummary(c.id, c.title, c.blockchainId, " +
+            "c.creatorAddress, c.recipientAddress, c.status, c.conditionType, c.createdAt, c.openDate, c.openedAt, " +
+            "c.viewCount, c.shareCount, c.subscriptionCount, c.featured) FROM Capsule c ";
+
+    public static CapsuleSummary of(Capsule capsule) {
+        return new CapsuleSummary(
+                capsule.getId(),
+                capsule.getTitle(),
+                capsule.getBlockchainId(),
+                capsule.getCreatorAddress(),
+                capsule.getRecipientAddress(),
+                capsule.getStatus(),
+                capsule.getConditionType(),
+                capsule.getCreatedAt(),
+                capsule.getOpenDate(),
+                capsule.getOpenedAt(),
+                capsule.getViewCount(),
+                capsule.getShareCount(),
+                capsule.getSubscriptionCount(),
+                capsule.getFeatured());
+    }
+
+    public CapsuleSummary withCounts(Integer viewCount, Integer shareCount, Integer subscriptionCount) {
+        return new CapsuleSummary(id, title, blockchainId, creatorAddress, recipientAddress, status, conditionType,
+                createdAt, openDate, openedAt, viewCount, shareCount, subscriptionCount, featured);
+    }
+}
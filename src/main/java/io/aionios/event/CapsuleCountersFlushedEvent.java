@@ -0,0 +1,12 @@
+package io.aionios.event;
+
+import java.util.List;
+
+/**
+ * Published after view, share or subscription counters of capsules were
+ * written to the database.
+ *
+ * @param capsuleIds The ids of the capsules whose counters changed
+ */
+public record CapsuleCountersFlushedEvent(List<Long> capsuleIds) {
+}
@@ -0,0 +1,27 @@
+package io.aionios.event;
+
+import io.aionios.model.Capsule;
+
+import java.util.List;
+
+/**
+ * Published after one or more capsules moved to a new status. Single-capsule
+ * transitions carry the capsule itself; bulk transitions only carry ids.
+ *
+ * @param status The status the capsules moved to
+ * @param capsuleIds The ids of the capsules
+ * @param capsules The capsules, if known to the publisher, otherwise empty
+ */
+public record CapsuleStatusChangedEvent(
+        Capsule.CapsuleStatus status,
+        List<Long> capsuleIds,
+        List<Capsule> capsules) {
+
+    public static CapsuleStatusChangedEvent of(Capsule capsule) {
+        return new CapsuleStatusChangedEvent(capsule.getStatus(), List.of(capsule.getId()), List.of(capsule));
+    }
+
+    public static CapsuleStatusChangedEvent of(Capsule.CapsuleStatus status, List<Long> capsuleIds) {
+        return new CapsuleStatusChangedEvent(status, List.copyOf(capsuleIds), List.of());
+    }
+}
@@ -0,0 +1,11 @@
+package io.aionios.event;
+
+import java.util.Set;
+
+/**
+ * Published when this instance gained or lost shards of the due capsules.
+ *
+ * @param shards The shards this instance owns now
+ */
+public record SchedulerShardsChangedEvent(Set<Integer> shards) {
+}
@@ -0,0 +1,158 @@
+package io.aionios.metrics;
+
+import io.aionios.blockchain.BlockchainService;
+import io.aionios.blockchain.Web3jBlockchainService;
+import io.aionios.blockchain.rpc.LatencyHistogram;
+import io.aionios.oracle.OracleService;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.service.IPFSService;
+import io.aionios.service.impl.CachingIPFSService;
+import io.aionios.service.impl.CapsuleCache;
+import io.aionios.service.impl.CapsuleOpeningScheduler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gauges for the opening scheduler's backlog, the capsule cache, the oracle
+ * index, the IPFS content cache and the JSON-RPC call latencies. The
+ * backlog of due but still sealed capsules is counted on a schedule rather
+ * than on every scrape, so scraping never queries the database. JSON-RPC
+ * methods seen since the last refresh get their gauges on the same schedule.
+ */
+@Component
+@Slf4j
+public class CapsuleMetrics implements MeterBinder {
+
+    private final CapsuleRepository capsuleRepository;
+    private final CapsuleOpeningScheduler openingScheduler;
+    private final CapsuleCache capsuleCache;
+    private final OracleService oracleService;
+    private final ObjectProvider<IPFSService> ipfsServices;
+    private final ObjectProvider<BlockchainService> blockchainServices;
+    private final AtomicLong dueBacklog = new AtomicLong();
+    private volatile Web3jBlockchainService rpcService;
+    private volatile MultiGauge rpcLatencies;
+
+    public CapsuleMetrics(
+            CapsuleRepository capsuleRepository,
+            CapsuleOpeningScheduler openingScheduler,
+            CapsuleCache capsuleCache,
+            OracleService oracleService,
+            ObjectProvider<IPFSService> ipfsServices,
+            ObjectProvider<BlockchainService> blockchainServices) {
+        this.capsuleRepository = capsuleRepository;
+        this.openingScheduler = openingScheduler;
+        this.capsuleCache = capsuleCache;
+        this.oracleService = oracleService;
+        this.ipfsServices = ipfsServices;
+        this.blockchainServices = blockchainServices;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("capsule.scheduler.backlog", dueBacklog, AtomicLong::get)
+                .description("TIME capsules past their open date that are still sealed")
+                .register(registry);
+        Gauge.builder("capsule.wheel.scheduled", openingScheduler, CapsuleOpeningScheduler::getScheduledCount)
+                .description("Capsules waiting in the opening timing wheel")
+                .register(registry);
+        FunctionCounter.builder("capsule.cache.hits", capsuleCache, CapsuleCache::getHitCount)
+                .register(registry);
+        FunctionCounter.builder("capsule.cache.misses", capsuleCache, CapsuleCache::getMissCount)
+                .register(registry);
+        Gauge.builder("capsule.cache.size", capsuleCache, CapsuleCache::size)
+                .register(registry);
+        Gauge.builder("capsule.oracle.tracked", oracleService, OracleService::getTrackedCount)
+                .description("Sealed capsules waiting on an oracle threshold")
+                .register(registry);
+
+        ipfsServices.orderedStream()
+                .filter(CachingIPFSService.class::isInstance)
+                .map(CachingIPFSService.class::cast)
+                .findFirst()
+                .ifPresent(cache -> bindCache(registry, cache));
+
+        blockchainServices.orderedStream()
+                .filter(Web3jBlockchainService.class::isInstance)
+                .map(Web3jBlockchainService.class::cast)
+                .findFirst()
+                .ifPresent(service -> {
+                    rpcService = service;
+                    rpcLatencies = MultiGauge.builder("capsule.chain.rpc.latency")
+                            .description("JSON-RPC call latency by method, accurate to within a factor of two")
+                            .baseUnit("microseconds")
+                            .register(registry);
+                    refreshRpcLatencies();
+                });
+    }
+
+    @Scheduled(initialDelayString = "${capsule.metrics.backlog-refresh-ms:30000}",
+            fixedDelayString = "${capsule.metrics.backlog-refresh-ms:30000}")
+    public void refreshBacklog() {
+        try {
+            dueBacklog.set(capsuleRepository.countDueCapsules(LocalDateTime.now()));
+        } catch (Exception e) {
+            log.warn("Failed to count due capsules", e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${capsule.metrics.backlog-refresh-ms:30000}",
+            fixedDelayString = "${capsule.metrics.backlog-refresh-ms:30000}")
+    public void refreshRpcLatencies() {
+        Web3jBlockchainService service = rpcService;
+        MultiGauge gauge = rpcLatencies;
+        if (service == null || gauge == null) {
+            return;
+        }
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        for (Map.Entry<String, LatencyHistogram> method : service.getRpcLatencies().entrySet()) {
+            rows.add(latencyRow(method, "mean", LatencyHistogram::getMeanMicros));
+            rows.add(latencyRow(method, "p50", histogram -> histogram.getPercentileMicros(50)));
+            rows.add(latencyRow(method, "p99", histogram -> histogram.getPercentileMicros(99)));
+        }
+        gauge.register(rows, true);
+    }
+
+    private static MultiGauge.Row<LatencyHistogram> latencyRow(
+            Map.Entry<String, LatencyHistogram> method, String statistic, ToDoubleFunction<LatencyHistogram> value) {
+        return MultiGauge.Row.of(Tags.of("method", method.getKey(), "statistic", statistic), method.getValue(), value);
+    }
+
+    private static void bindCache(MeterRegistry registry, CachingIPFSService cache) {
+        FunctionCounter.builder("capsule.ipfs.cache.hits", cache, c -> c.getStats().memoryHits())
+                .tag("tier", "memory")
+                .register(registry);
+        FunctionCounter.builder("capsule.ipfs.cache.hits", cache, c -> c.getStats().diskHits())
+                .tag("tier", "disk")
+                .register(registry);
+        FunctionCounter.builder("capsule.ipfs.cache.misses", cache, c -> c.getStats().misses())
+                .register(registry);
+        FunctionCounter.builder("capsule.ipfs.cache.evictions", cache, c -> c.getStats().evictions())
+                .register(registry);
+        Gauge.builder("capsule.ipfs.cache.hit.ratio", cache, c -> c.getStats().hitRatio())
+                .register(registry);
+        Gauge.builder("capsule.ipfs.cache.size", cache, c -> c.getStats().memoryBytes())
+                .tag("tier", "memory")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("capsule.ipfs.cache.size", cache, c -> c.getStats().diskBytes())
+                .tag("tier", "disk")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
@@ -0,0 +1,65 @@
+package io.aionios.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the time of each API request into the chain, IPFS and everything
+ * else (the database and the application), recorded as
+ * {@code capsule.request.time} by endpoint and layer. The request's overall
+ * latency is recorded by Spring Boot as {@code http.server.requests}.
+ */
+@Component
+public class RequestTimingFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public RequestTimingFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTimings timings = RequestTimings.current();
+        timings.reset();
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long total = System.nanoTime() - start;
+            // Only requests that reached a handler have an endpoint to record them under
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern != null) {
+                long chain = timings.getNanos(RequestTimings.Layer.CHAIN);
+                long ipfs = timings.getNanos(RequestTimings.Layer.IPFS);
+                String endpoint = request.getMethod() + " " + pattern;
+                record(endpoint, "chain", chain);
+                record(endpoint, "ipfs", ipfs);
+                record(endpoint, "other", Math.max(0, total - chain - ipfs));
+            }
+            timings.reset();
+        }
+    }
+
+    private void record(String endpoint, String layer, long nanos) {
+        timers.computeIfAbsent(endpoint + ":" + layer, key -> Timer.builder("capsule.request.time")
+                        .tag("endpoint", endpoint)
+                        .tag("layer", layer)
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,78 @@
+package io.aionios.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Time spent in the chain and IPFS layers by the current thread, so a
+ * request's latency can be split into chain, IPFS and everything else (the
+ * database and the application itself). Nested calls into the same layer,
+ * such as the IPFS cache calling the IPFS node, are only counted once.
+ */
+public final class RequestTimings {
+
+    public enum Layer {
+        CHAIN,
+        IPFS
+    }
+
+    private static final ThreadLocal<RequestTimings> CURRENT = ThreadLocal.withInitial(RequestTimings::new);
+
+    private final Map<Layer, Long> nanos = new EnumMap<>(Layer.class);
+    private final Map<Layer, Integer> depth = new EnumMap<>(Layer.class);
+
+    private RequestTimings() {
+    }
+
+    /**
+     * @return The timings of the current thread
+     */
+    public static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs a call and charges its time to a layer, for callers that wait on
+     * work another thread does for them, such as a batched chain call
+     */
+    public static <T> T time(Layer layer, Callable<T> call) throws Exception {
+        RequestTimings timings = current();
+        boolean outermost = timings.enter(layer);
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            timings.exit(layer, outermost, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Clears the time accumulated so far, at the start of a request
+     */
+    public void reset() {
+        nanos.clear();
+        depth.clear();
+    }
+
+    /**
+     * @return The time spent in the layer since the last reset
+     */
+    public long getNanos(Layer layer) {
+        return nanos.getOrDefault(layer, 0L);
+    }
+
+    /**
+     * @return Whether this is the outermost call into the layer
+     */
+    boolean enter(Layer layer) {
+        return depth.merge(layer, 1, Integer::sum) == 1;
+    }
+
+    void exit(Layer layer, boolean outermost, long elapsedNanos) {
+        depth.merge(layer, -1, Integer::sum);
+        if (outermost) {
+            nanos.merge(layer, elapsedNanos, Long::sum);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package io.aionios.metrics;
+
+import io.aionios.blockchain.BlockchainService;
+import io.aionios.blockchain.ChainEventSource;
+import io.aionios.service.IPFSService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Times every call into the {@link BlockchainService} and {@link IPFSService}
+ * beans, by method and outcome, and charges it to the calling thread's
+ * {@link RequestTimings}. For IPFS it also counts the bytes uploaded and
+ * downloaded. Beans are wrapped in class-based proxies, so they can still be
+ * injected by their implementation class.
+ */
+@Component
+public class ServiceTimingPostProcessor implements BeanPostProcessor {
+
+    private static final Set<String> CHAIN_METHODS = methodNames(BlockchainService.class, ChainEventSource.class);
+    private static final Set<String> IPFS_METHODS = methodNames(IPFSService.class);
+
+    // Resolved on first use, since post-processors are created before the registry
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final Map<String, Counter> byteCounters = new ConcurrentHashMap<>();
+
+    public ServiceTimingPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof BlockchainService) {
+            return proxy(bean, new TimingInterceptor(RequestTimings.Layer.CHAIN, "capsule.chain.calls", bean, CHAIN_METHODS));
+        }
+        if (bean instanceof IPFSService) {
+            return proxy(bean, new TimingInterceptor(RequestTimings.Layer.IPFS, "capsule.ipfs.calls", bean, IPFS_METHODS));
+        }
+        return bean;
+    }
+
+    private static Object proxy(Object bean, MethodInterceptor interceptor) {
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(interceptor);
+        return factory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private static Set<String> methodNames(Class<?>... interfaces) {
+        return Arrays.stream(interfaces)
+                .flatMap(type -> Stream.of(type.getMethods()))
+                .map(Method::getName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private class TimingInterceptor implements MethodInterceptor {
+
+        private final RequestTimings.Layer layer;
+        private final String metricName;
+        private final String implementation;
+        private final Set<String> methods;
+        private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+        TimingInterceptor(RequestTimings.Layer layer, String metricName, Object bean, Set<String> methods) {
+            this.layer = layer;
+            this.metricName = metricName;
+            this.implementation = bean.getClass().getSimpleName();
+            this.methods = methods;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            String method = invocation.getMethod().getName();
+            if (!methods.contains(method)) {
+                return invocation.proceed();
+            }
+
+            RequestTimings timings = RequestTimings.current();
+            // Only the outermost call counts bytes, so the cache and the node behind it don't both
+            boolean outermost = timings.enter(layer);
+            boolean countBytes = outermost && layer == RequestTimings.Layer.IPFS;
+            long start = System.nanoTime();
+            String outcome = "error";
+            try {
+                if (countBytes) {
+                    countUpload(invocation);
+                }
+                Object result = invocation.proceed();
+                outcome = "success";
+                return countBytes ? countDownload(result) : result;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                timings.exit(layer, outermost, elapsed);
+                timer(method, outcome).record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void countUpload(MethodInvocation invocation) {
+            Object[] arguments = invocation.getArguments();
+            if (arguments.length == 1 && arguments[0] instanceof MultipartFile file) {
+                bytes("upload").increment(file.getSize());
+            } else if (arguments.length == 3 && arguments[1] instanceof InputStream content
+                    && invocation instanceof ProxyMethodInvocation proxyInvocation) {
+                Object[] counted = arguments.clone();
+                counted[1] = new CountingInputStream(content, bytes("upload"));
+                proxyInvocation.setArguments(counted);
+            }
+        }
+
+        private Object countDownload(Object result) {
+            if (result instanceof byte[] content) {
+                bytes("download").increment(content.length);
+            } else if (result instanceof InputStream content) {
+                return new CountingInputStream(content, bytes("download"));
+            }
+            return result;
+        }
+
+        private Timer timer(String method, String outcome) {
+            return timers.computeIfAbsent(method + ":" + outcome, key -> Timer.builder(metricName)
+                    .tag("method", method)
+                    .tag("outcome", outcome)
+                    .tag("implementation", implementation)
+                    .register(meterRegistry.getObject()));
+        }
+
+        private Counter bytes(String direction) {
+            return byteCounters.computeIfAbsent(direction, key -> Counter.builder("capsule.ipfs.bytes")
+                    .baseUnit("bytes")
+                    .tag("direction", direction)
+                    .register(meterRegistry.getObject()));
+        }
+    }
+
+    /**
+     * Counts the bytes read through it as they are read
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final Counter counter;
+
+        CountingInputStream(InputStream in, Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                counter.increment();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                counter.increment(read);
+            }
+            return read;
+        }
+    }
+}
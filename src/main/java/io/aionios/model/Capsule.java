@@ -1,24 +1,35 @@
 package io.aionios.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
 @Entity
-@Table(name = "capsules")
+@Table(name = "capsules", indexes = {
+        @Index(name = "idx_capsules_due", columnList = "status, condition_type, open_date, id"),
+        @Index(name = "idx_capsules_blockchain_id", columnList = "blockchain_id"),
+        @Index(name = "idx_capsules_creator", columnList = "creator_address_key, id"),
+        @Index(name = "idx_capsules_recipient", columnList = "recipient_address_key, id")
+})
 @Data
-@Builder
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Capsule {
 
     @Id
+    @EqualsAndHashCode.Include
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
@@ -37,6 +48,15 @@ public class Capsule {
     @Column(name = "recipient_address")
     private String recipientAddress;
 
+    // Lowercased addresses for case-insensitive lookups, kept in sync on save
+    @JsonIgnore
+    @Column(name = "creator_address_key")
+    private String creatorAddressKey;
+
+    @JsonIgnore
+    @Column(name = "recipient_address_key")
+    private String recipientAddressKey;
+
     @Column(name = "content_hash")
     private String contentHash;
 
@@ -66,18 +86,21 @@ public class Capsule {
     @Column(name = "ipfs_hash")
     private String ipfsHash;
     
-    @Column(name = "view_count")
+    // Counters are only changed by CapsuleCounters' atomic increments
+    @Column(name = "view_count", updatable = false)
     private Integer viewCount = 0;
     
-    @Column(name = "share_count")
+    @Column(name = "share_count", updatable = false)
     private Integer shareCount = 0;
     
-    @Column(name = "subscription_count")
+    @Column(name = "subscription_count", updatable = false)
     private Integer subscriptionCount = 0;
     
     @Column(name = "featured")
     private Boolean featured = false;
 
+    // Excluded so that equality, hashing and logging never load the assets
+    @ToString.Exclude
     @OneToMany(mappedBy = "capsule", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<CapsuleAsset> assets = new HashSet<>();
 
@@ -97,11 +120,26 @@ public class Capsule {
         COMPOUND
     }
 
+    /**
+     * @return The form addresses are stored and looked up in, so checksummed
+     *         and lowercase spellings of an address match
+     */
+    public static String addressKey(String address) {
+        return address != null ? address.toLowerCase(Locale.ROOT) : null;
+    }
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         if (status == null) {
             status = CapsuleStatus.DRAFT;
         }
+        onUpdate();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        creatorAddressKey = addressKey(creatorAddress);
+        recipientAddressKey = addressKey(recipientAddress);
     }
 }
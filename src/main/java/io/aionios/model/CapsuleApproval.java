@@ -0,0 +1,45 @@
+package io.aionios.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A signer's approval to open a capsule with a MULTISIG condition, kept with
+ * the signature it was recovered from.
+ */
+@Entity
+@Table(name = "capsule_approvals",
+       uniqueConstraints = @UniqueConstraint(name = "uk_capsule_approvals_signer", columnNames = {"capsule_id", "signer_address_key"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CapsuleApproval {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "capsule_id", nullable = false)
+    private Long capsuleId;
+
+    // See Capsule#addressKey
+    @Column(name = "signer_address_key", nullable = false, length = 42)
+    private String signerAddressKey;
+
+    @Column(nullable = false, length = 132)
+    private String signature;
+
+    @Column(name = "approved_at", nullable = false)
+    private LocalDateTime approvedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        approvedAt = LocalDateTime.now();
+    }
+}
@@ -1,9 +1,12 @@
 package io.aionios.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import jakarta.persistence.*;
 
@@ -19,6 +22,10 @@ public class CapsuleAsset {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Back-reference to the owning capsule, which would otherwise recurse
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "capsule_id", nullable = false)
     private Capsule capsule;
@@ -0,0 +1,31 @@
+package io.aionios.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Ownership of one shard of the due capsules by a scheduler instance. A lease
+ * that is not renewed before it expires can be claimed by another instance.
+ */
+@Entity
+@Table(name = "scheduler_leases")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SchedulerLease {
+
+    @Id
+    private Integer shard;
+
+    @Column(length = 100)
+    private String owner;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+}
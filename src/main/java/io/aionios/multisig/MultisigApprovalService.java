@@ -0,0 +1,366 @@
+package io.aionios.multisig;
+
+import io.aionios.blockchain.MicroBatcher;
+import io.aionios.cache.WeightedLruCache;
+import io.aionios.condition.Condition;
+import io.aionios.condition.ConditionEngine;
+import io.aionios.condition.MultisigApprovalSource;
+import io.aionios.config.ExecutionMode;
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.model.CapsuleApproval;
+import io.aionios.repository.CapsuleApprovalRepository;
+import io.aionios.repository.CapsuleRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects signer approvals for capsules with a MULTISIG condition, and opens
+ * a capsule as soon as an approval brings it to quorum.
+ * <p>
+ * Approvals are queued and handled in batches off the request thread. The
+ * capsules of a batch are loaded first, since the message signed names each
+ * capsule's blockchain id. The signers are then recovered from their
+ * signatures in parallel on every core, and the batch is recorded against
+ * each capsule's {@link MultisigProgress} and stored in one go, or one by one
+ * if that fails, so an approval that can't be stored fails on its own. Only
+ * the capsules that just reached the threshold of a MULTISIG condition have
+ * their whole condition evaluated.
+ * <p>
+ * Progress is loaded from the database the first time a capsule is approved
+ * and kept for the most recently approved capsules. Approvals stored by other
+ * instances are not seen by the progress kept here; a capsule brought to
+ * quorum that way is opened by the next conditional scheduler round, which
+ * reads approvals from the database.
+ */
+@Component
+@Slf4j
+public class MultisigApprovalService implements MultisigApprovalSource {
+
+    private final CapsuleRepository capsuleRepository;
+    private final CapsuleApprovalRepository approvalRepository;
+    private final ConditionEngine conditionEngine;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final SignatureVerifier verifier;
+    private final MicroBatcher<ApprovalRequest, Recorded> batcher;
+    private final WeightedLruCache<Long, MultisigProgress> progress;
+    // Batches are verified concurrently but recorded one at a time
+    private final ReentrantLock recordLock = new ReentrantLock();
+
+    public MultisigApprovalService(
+            CapsuleRepository capsuleRepository,
+            CapsuleApprovalRepository approvalRepository,
+            ConditionEngine conditionEngine,
+            ApplicationEventPublisher eventPublisher,
+            ExecutionMode executionMode,
+            @Value("${capsule.multisig.batch-size:256}") int batchSize,
+            @Value("${capsule.multisig.batch-delay-ms:5}") long batchDelayMillis,
+            @Value("${capsule.multisig.verify-threads:0}") int verifyThreads,
+            @Value("${capsule.multisig.signature-cache-size:100000}") long signatureCacheSize,
+            @Value("${capsule.multisig.progress-cache-size:10000}") long progressCacheSize,
+            @Value("${time.capsule.contract.address:}") String contractAddress,
+            @Value("${web3j.network-id:1337}") long networkId) {
+        this.capsuleRepository = capsuleRepository;
+        this.approvalRepository = approvalRepository;
+        this.conditionEngine = conditionEngine;
+        this.eventPublisher = eventPublisher;
+        int threads = verifyThreads > 0 ? verifyThreads : Runtime.getRuntime().availableProcessors();
+        this.verifier = new SignatureVerifier(threads, signatureCacheSize, contractAddress, networkId);
+        this.progress = new WeightedLruCache<>(progressCacheSize, capsuleProgress -> 1);
+        this.batcher = new MicroBatcher<>("multisig-approvals", batchSize, batchDelayMillis, 2,
+                this::handle, executionMode.threadFactory("multisig-approvals"));
+    }
+
+    @PreDestroy
+    public void close() {
+        batcher.close();
+        verifier.close();
+    }
+
+    /**
+     * Queues a signer's approval to open a capsule
+     *
+     * @param capsuleId The capsule to approve
+     * @param signature The signer's signature of {@link #getApprovalMessage}
+     * @return The outcome, once the approval is recorded
+     */
+    public CompletableFuture<ApprovalResult> approve(Long capsuleId, String signature) {
+        return batcher.submit(new ApprovalRequest(capsuleId, signature)).thenCompose(recorded -> recorded.error() != null
+                ? CompletableFuture.failedFuture(recorded.error())
+                : CompletableFuture.completedFuture(recorded.result()));
+    }
+
+    /**
+     * @return The message a signer signs to approve opening the capsule
+     */
+    public String getApprovalMessage(Long capsuleId, String blockchainId) {
+        return verifier.approvalMessage(capsuleId, blockchainId);
+    }
+
+    @Override
+    public Map<Long, Set<String>> getApprovals(Collection<Long> capsuleIds) {
+        Map<Long, Set<String>> approvals = new HashMap<>();
+        for (CapsuleApprovalRepository.SignerApproval approval : approvalRepository.findSignersByCapsuleIds(capsuleIds)) {
+            approvals.computeIfAbsent(approval.getCapsuleId(), id -> new HashSet<>()).add(approval.getSignerAddressKey());
+        }
+        return approvals;
+    }
+
+    // Runs after commit, like the other status listeners
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCapsuleStatusChanged(CapsuleStatusChangedEvent event) {
+        if (event.status() != Capsule.CapsuleStatus.SEALED) {
+            event.capsuleIds().forEach(progress::remove);
+        }
+    }
+
+    private List<Recorded> handle(List<ApprovalRequest> batch) {
+        Set<Long> capsuleIds = new HashSet<>();
+        batch.forEach(request -> capsuleIds.add(request.capsuleId()));
+        Map<Long, MultisigProgress> found;
+        recordLock.lock();
+        try {
+            found = loadProgress(capsuleIds);
+        } finally {
+            recordLock.unlock();
+        }
+
+        // Only approvals of capsules found can be verified, since the message names the blockchain id
+        List<SignatureVerifier.Approval> approvals = new ArrayList<>();
+        for (ApprovalRequest request : batch) {
+            MultisigProgress capsuleProgress = found.get(request.capsuleId());
+            if (capsuleProgress != null) {
+                approvals.add(new SignatureVerifier.Approval(
+                        request.capsuleId(), capsuleProgress.getBlockchainId(), request.signature()));
+            }
+        }
+        Iterator<String> recovered = verifier.recoverAll(approvals).iterator();
+        List<String> signers = new ArrayList<>(batch.size());
+        batch.forEach(request -> signers.add(found.containsKey(request.capsuleId()) ? recovered.next() : null));
+
+        recordLock.lock();
+        try {
+            return record(batch, found.keySet(), signers);
+        } finally {
+            recordLock.unlock();
+        }
+    }
+
+    /**
+     * @param found The capsules whose approvals were verified
+     * @param signers The recovered signer of each approval, null if it was not verified or invalid
+     */
+    private List<Recorded> record(List<ApprovalRequest> batch, Set<Long> found, List<String> signers) {
+        Set<Long> capsuleIds = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (signers.get(i) != null) {
+                capsuleIds.add(batch.get(i).capsuleId());
+            }
+        }
+        // Loaded again, in case another batch opened one of the capsules meanwhile
+        Map<Long, MultisigProgress> capsules = loadProgress(capsuleIds);
+
+        ApprovalResult.Status[] statuses = new ApprovalResult.Status[batch.size()];
+        List<CapsuleApproval> approvals = new ArrayList<>();
+        // The position in the batch of each approval to store
+        List<Integer> approvalRows = new ArrayList<>();
+        Map<Long, Condition> quorum = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            ApprovalRequest approval = batch.get(i);
+            MultisigProgress capsuleProgress = capsules.get(approval.capsuleId());
+            if (signers.get(i) == null) {
+                statuses[i] = found.contains(approval.capsuleId())
+                        ? ApprovalResult.Status.INVALID_SIGNATURE : ApprovalResult.Status.NOT_FOUND;
+                continue;
+            }
+            if (capsuleProgress == null) {
+                statuses[i] = ApprovalResult.Status.NOT_FOUND;
+                continue;
+            }
+            MultisigProgress.Outcome outcome = capsuleProgress.approve(signers.get(i));
+            statuses[i] = switch (outcome) {
+                case NOT_A_SIGNER -> ApprovalResult.Status.NOT_A_SIGNER;
+                case ALREADY_APPROVED -> ApprovalResult.Status.ALREADY_APPROVED;
+                case APPROVED, QUORUM -> ApprovalResult.Status.APPROVED;
+            };
+            if (statuses[i] == ApprovalResult.Status.APPROVED) {
+                approvals.add(CapsuleApproval.builder()
+                        .capsuleId(approval.capsuleId())
+                        .signerAddressKey(signers.get(i))
+                        .signature(approval.signature())
+                        .build());
+                approvalRows.add(i);
+            }
+            if (outcome == MultisigProgress.Outcome.QUORUM) {
+                quorum.put(approval.capsuleId(), capsuleProgress.getCondition());
+            }
+        }
+
+        Map<Integer, RuntimeException> errors = new HashMap<>();
+        save(approvals).forEach((index, error) -> {
+            int row = approvalRows.get(index);
+            Long capsuleId = batch.get(row).capsuleId();
+            errors.put(row, error);
+            // The progress no longer matches what is stored, so it is loaded again next time, and
+            // the capsule is left to the conditional scheduler, which reads what was stored
+            progress.remove(capsuleId);
+            quorum.remove(capsuleId);
+        });
+        Set<Long> opened = open(quorum);
+
+        List<Recorded> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors.containsKey(i)) {
+                results.add(new Recorded(null, errors.get(i)));
+                continue;
+            }
+            Long capsuleId = batch.get(i).capsuleId();
+            MultisigProgress capsuleProgress = capsules.get(capsuleId);
+            results.add(new Recorded(new ApprovalResult(capsuleId, signers.get(i), statuses[i],
+                    capsuleProgress != null ? capsuleProgress.getApprovalCount() : 0,
+                    capsuleProgress != null ? capsuleProgress.getThreshold() : 0,
+                    opened.contains(capsuleId)), null));
+        }
+        return results;
+    }
+
+    /**
+     * @return The progress of each sealed capsule that has a MULTISIG condition
+     */
+    private Map<Long, MultisigProgress> loadProgress(Set<Long> capsuleIds) {
+        Map<Long, MultisigProgress> result = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        for (Long capsuleId : capsuleIds) {
+            MultisigProgress cached = progress.get(capsuleId);
+            if (cached != null) {
+                result.put(capsuleId, cached);
+            } else {
+                missing.add(capsuleId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, MultisigProgress> loaded = new HashMap<>();
+        for (CapsuleRepository.ConditionalCapsule capsule : capsuleRepository.findConditionalCapsulesByIds(missing)) {
+            try {
+                if (capsule.getBlockchainId() == null) {
+                    // Not on chain yet, so there is nothing its signers could have signed
+                    continue;
+                }
+                MultisigProgress capsuleProgress = MultisigProgress.of(capsule.getBlockchainId(), conditionEngine.compile(
+                        capsule.getId(), capsule.getConditionType(), capsule.getConditionData(), capsule.getOpenDate()));
+                if (capsuleProgress != null) {
+                    loaded.put(capsule.getId(), capsuleProgress);
+                }
+            } catch (IllegalArgumentException e) {
+                log.debug("Capsule {} has an invalid condition: {}", capsule.getId(), e.getMessage());
+            }
+        }
+        if (!loaded.isEmpty()) {
+            getApprovals(loaded.keySet()).forEach((capsuleId, signers) -> loaded.get(capsuleId).approveAll(signers));
+            loaded.forEach(progress::put);
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    /**
+     * Stores the approvals in one go, or one by one if that fails
+     *
+     * @return The error of each approval that could not be stored, by its position
+     */
+    private Map<Integer, RuntimeException> save(List<CapsuleApproval> approvals) {
+        if (approvals.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            approvalRepository.saveAll(approvals);
+            return Map.of();
+        } catch (RuntimeException e) {
+            // Another instance may have stored some of the approvals first; keep the rest
+            log.debug("Storing {} approvals at once failed, storing them one by one", approvals.size(), e);
+        }
+
+        Map<Integer, RuntimeException> failed = new HashMap<>();
+        for (int i = 0; i < approvals.size(); i++) {
+            CapsuleApproval approval = approvals.get(i);
+            try {
+                approval.setId(null);
+                approvalRepository.save(approval);
+            } catch (DataIntegrityViolationException duplicate) {
+                log.debug("Signer {} already approved capsule {}", approval.getSignerAddressKey(), approval.getCapsuleId());
+            } catch (RuntimeException e) {
+                log.warn("Failed to store the approval of capsule {} by {}", approval.getCapsuleId(),
+                        approval.getSignerAddressKey(), e);
+                failed.put(i, e);
+            }
+        }
+        return failed;
+    }
+
+    private Set<Long> open(Map<Long, Condition> quorum) {
+        if (quorum.isEmpty()) {
+            return Set.of();
+        }
+        // Compound conditions may still wait on their other parts
+        List<Long> met = conditionEngine.evaluate(quorum, conditionEngine.newRound());
+        if (met.isEmpty()) {
+            return Set.of();
+        }
+        List<Long> updated = capsuleRepository.markSealedReadyToOpen(met);
+        met.forEach(progress::remove);
+        if (!updated.isEmpty()) {
+            eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(Capsule.CapsuleStatus.READY_TO_OPEN, updated));
+            log.info("Signer approvals marked {} capsules ready to open", updated.size());
+        }
+        return new HashSet<>(updated);
+    }
+
+    private record ApprovalRequest(Long capsuleId, String signature) {
+    }
+
+    // What the batcher hands back for one approval: its result, or the error storing it
+    private record Recorded(ApprovalResult result, RuntimeException error) {
+    }
+
+    /**
+     * @param capsuleId The capsule approved
+     * @param signer The recovered signer's address key, null if the signature is invalid
+     * @param status What became of the approval
+     * @param approvals The number of the capsule's signers that approved it
+     * @param threshold The fewest approvals that can meet one of the capsule's MULTISIG conditions
+     * @param readyToOpen Whether this approval made the capsule ready to open
+     */
+    public record ApprovalResult(Long capsuleId, String signer, Status status, int approvals, int threshold,
+                                 boolean readyToOpen) {
+
+        public enum Status {
+            APPROVED,
+            ALREADY_APPROVED,
+            NOT_A_SIGNER,
+            INVALID_SIGNATURE,
+            /** No sealed capsule on chain with a MULTISIG condition has the id */
+            NOT_FOUND
+        }
+    }
+}
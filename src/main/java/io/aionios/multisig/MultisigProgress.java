@@ -0,0 +1,139 @@
+package io.aionios.multisig;
+
+import io.aionios.condition.Condition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Approval progress of one capsule. The signers of all the capsule's MULTISIG
+ * conditions are kept once in a sorted array, the approvals as a bit per
+ * signer, and each condition as the positions of its signers, so a capsule
+ * costs little more than its signer addresses.
+ */
+public final class MultisigProgress {
+
+    private final String blockchainId;
+    private final Condition condition;
+    private final String[] signers;
+    private final int[][] groups;
+    private final int[] thresholds;
+    private final BitSet approved;
+
+    /**
+     * @param blockchainId The capsule's blockchain id, which its approvals are signed for
+     * @param condition The capsule's compiled condition
+     * @return The progress of the capsule, or null if its condition has no MULTISIG part
+     */
+    public static MultisigProgress of(String blockchainId, Condition condition) {
+        List<Condition.Multisig> multisigs = new ArrayList<>();
+        condition.visit(node -> {
+            if (node instanceof Condition.Multisig multisig) {
+                multisigs.add(multisig);
+            }
+        });
+        return multisigs.isEmpty() ? null : new MultisigProgress(blockchainId, condition, multisigs);
+    }
+
+    private MultisigProgress(String blockchainId, Condition condition, List<Condition.Multisig> multisigs) {
+        TreeSet<String> allSigners = new TreeSet<>();
+        multisigs.forEach(multisig -> allSigners.addAll(multisig.signers()));
+        this.blockchainId = blockchainId;
+        this.condition = condition;
+        this.signers = allSigners.toArray(String[]::new);
+        this.groups = new int[multisigs.size()][];
+        this.thresholds = new int[multisigs.size()];
+        for (int i = 0; i < multisigs.size(); i++) {
+            groups[i] = multisigs.get(i).signers().stream().mapToInt(this::indexOf).sorted().toArray();
+            thresholds[i] = multisigs.get(i).threshold();
+        }
+        this.approved = new BitSet(signers.length);
+    }
+
+    public String getBlockchainId() {
+        return blockchainId;
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+
+    /**
+     * Records approvals already stored
+     */
+    public synchronized void approveAll(Collection<String> approvals) {
+        for (String signer : approvals) {
+            int index = indexOf(signer);
+            if (index >= 0) {
+                approved.set(index);
+            }
+        }
+    }
+
+    /**
+     * Records a signer's approval
+     *
+     * @param signer The signer's address key
+     */
+    public synchronized Outcome approve(String signer) {
+        int index = indexOf(signer);
+        if (index < 0) {
+            return Outcome.NOT_A_SIGNER;
+        }
+        if (approved.get(index)) {
+            return Outcome.ALREADY_APPROVED;
+        }
+        approved.set(index);
+
+        // Only the approval that brings a group to its threshold reaches quorum
+        for (int i = 0; i < groups.length; i++) {
+            if (Arrays.binarySearch(groups[i], index) >= 0 && count(groups[i]) == thresholds[i]) {
+                return Outcome.QUORUM;
+            }
+        }
+        return Outcome.APPROVED;
+    }
+
+    /**
+     * @return The number of signers that approved
+     */
+    public synchronized int getApprovalCount() {
+        return approved.cardinality();
+    }
+
+    /**
+     * @return The fewest approvals that can meet one of the MULTISIG conditions
+     */
+    public int getThreshold() {
+        return Arrays.stream(thresholds).min().orElse(0);
+    }
+
+    private int count(int[] group) {
+        int count = 0;
+        for (int index : group) {
+            if (approved.get(index)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int indexOf(String signer) {
+        return Arrays.binarySearch(signers, signer);
+    }
+
+    public enum Outcome {
+        /** The approval was recorded */
+        APPROVED,
+        /** The approval was recorded and met the threshold of a MULTISIG condition */
+        QUORUM,
+        /** The signer had already approved */
+        ALREADY_APPROVED,
+        /** The signer is not one of the capsule's signers */
+        NOT_A_SIGNER
+    }
+}
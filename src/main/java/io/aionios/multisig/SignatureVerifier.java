@@ -0,0 +1,152 @@
+package io.aionios.multisig;
+
+import io.aionios.cache.WeightedLruCache;
+import io.aionios.model.Capsule;
+import org.web3j.crypto.Keys;
+import org.web3j.crypto.Sign;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recovers the signers of capsule approvals from their ECDSA signatures.
+ * A batch is split into one chunk per worker and recovered in parallel, and
+ * the recovered addresses are cached by signature, so a signature sent again
+ * is not recovered twice.
+ * <p>
+ * Signers sign the {@link #approvalMessage} of the capsule as an Ethereum
+ * signed message ({@code personal_sign}). The message names the capsule's
+ * blockchain id, the contract and the network, so a signature can't be
+ * replayed against a capsule with the same id on another deployment.
+ */
+public class SignatureVerifier implements AutoCloseable {
+
+    private static final int SIGNATURE_LENGTH = 65;
+
+    private final ExecutorService workers;
+    private final int threads;
+    private final String contractAddress;
+    private final long networkId;
+    private final WeightedLruCache<String, String> signers;
+
+    /**
+     * @param threads The number of worker threads; recovery is CPU-bound, so one per core
+     * @param cacheSize The number of recovered addresses to keep
+     * @param contractAddress The address of the capsule contract
+     * @param networkId The id of the network the contract is deployed on
+     */
+    public SignatureVerifier(int threads, long cacheSize, String contractAddress, long networkId) {
+        this.threads = threads;
+        this.contractAddress = contractAddress.toLowerCase(Locale.ROOT);
+        this.networkId = networkId;
+        this.signers = new WeightedLruCache<>(cacheSize, signer -> 1);
+        AtomicInteger sequence = new AtomicInteger();
+        // Platform threads, since the work never blocks
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "multisig-verify-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The message a signer signs to approve opening the capsule
+     */
+    public String approvalMessage(Long capsuleId, String blockchainId) {
+        return "Approve opening Aionios capsule " + capsuleId + " (" + blockchainId + ") of contract "
+                + contractAddress + " on network " + networkId;
+    }
+
+    /**
+     * @param approvals The approvals to verify
+     * @return The address key of each approval's signer, in the same order, or null
+     *         for a signature that could not be recovered
+     */
+    public List<String> recoverAll(List<Approval> approvals) {
+        if (approvals.size() <= 1 || threads == 1) {
+            return recoverChunk(approvals);
+        }
+
+        int chunkSize = (approvals.size() + threads - 1) / threads;
+        List<CompletableFuture<List<String>>> chunks = new ArrayList<>();
+        for (int from = 0; from < approvals.size(); from += chunkSize) {
+            List<Approval> chunk = approvals.subList(from, Math.min(approvals.size(), from + chunkSize));
+            chunks.add(CompletableFuture.supplyAsync(() -> recoverChunk(chunk), workers));
+        }
+        List<String> result = new ArrayList<>(approvals.size());
+        chunks.forEach(chunk -> result.addAll(chunk.join()));
+        return result;
+    }
+
+    /**
+     * @return The address key of the signer, or null if the signature could not be recovered
+     */
+    public String recover(Approval approval) {
+        String key = networkId + ":" + contractAddress + ":" + approval.capsuleId() + ":" + approval.blockchainId()
+                + ":" + approval.signature().toLowerCase();
+        String signer = signers.get(key);
+        if (signer == null) {
+            signer = recoverSigner(approval);
+            if (signer != null) {
+                signers.put(key, signer);
+            }
+        }
+        return signer;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private List<String> recoverChunk(List<Approval> chunk) {
+        List<String> result = new ArrayList<>(chunk.size());
+        chunk.forEach(approval -> result.add(recover(approval)));
+        return result;
+    }
+
+    private String recoverSigner(Approval approval) {
+        byte[] bytes;
+        try {
+            bytes = Numeric.hexStringToByteArray(approval.signature());
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (bytes.length != SIGNATURE_LENGTH) {
+            return null;
+        }
+
+        // Wallets send v as 27/28, some libraries as 0/1
+        byte v = bytes[64];
+        if (v < 27) {
+            v += 27;
+        }
+        Sign.SignatureData signature = new Sign.SignatureData(
+                v, Arrays.copyOfRange(bytes, 0, 32), Arrays.copyOfRange(bytes, 32, 64));
+        byte[] message = approvalMessage(approval.capsuleId(), approval.blockchainId()).getBytes(StandardCharsets.UTF_8);
+        try {
+            BigInteger publicKey = Sign.signedPrefixedMessageToKey(message, signature);
+            return Capsule.addressKey(Numeric.prependHexPrefix(Keys.getAddress(publicKey)));
+        } catch (SignatureException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param capsuleId The capsule approved
+     * @param blockchainId The capsule's blockchain id
+     * @param signature The hex encoded 65 byte signature of the capsule's approval message
+     */
+    public record Approval(Long capsuleId, String blockchainId, String signature) {
+    }
+}
@@ -0,0 +1,86 @@
+package io.aionios.oracle;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * In-process oracle feed for development and tests. Values are set with
+ * {@link #publish}, which pushes them to subscribers right away, or are read
+ * from a properties file of {@code feed=value} lines that is loaded again
+ * whenever it changes.
+ */
+@Component
+@Slf4j
+public class MockOracleFeed implements OracleFeed {
+
+    private final Path file;
+    private final Map<String, BigDecimal> values = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, BigDecimal>> listeners = new CopyOnWriteArrayList<>();
+    private volatile long fileModified = Long.MIN_VALUE;
+
+    public MockOracleFeed(@Value("${oracle.mock.file:}") String file) {
+        this.file = file.isBlank() ? null : Path.of(file);
+    }
+
+    @Override
+    public Map<String, BigDecimal> read(Set<String> feeds) {
+        reloadFile();
+        Map<String, BigDecimal> result = new HashMap<>();
+        for (String feed : feeds) {
+            BigDecimal value = values.get(feed);
+            if (value != null) {
+                result.put(feed, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void subscribe(BiConsumer<String, BigDecimal> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sets a feed's value and pushes it to the subscribers
+     */
+    public void publish(String feed, BigDecimal value) {
+        values.put(feed, value);
+        listeners.forEach(listener -> listener.accept(feed, value));
+    }
+
+    private void reloadFile() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == fileModified) {
+                return;
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+            properties.forEach((feed, value) -> values.put(feed.toString(), new BigDecimal(value.toString().trim())));
+            fileModified = modified;
+            log.info("Loaded {} oracle values from {}", properties.size(), file);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Failed to load oracle values from {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.aionios.oracle;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A source of oracle feed values, such as prices. Feeds are polled for the
+ * values of many feeds at once; feeds that can push updates also deliver them
+ * to subscribers as they happen.
+ */
+public interface OracleFeed {
+
+    /**
+     * @param feeds The feeds to read
+     * @return The current value of each feed that has one
+     * @throws RuntimeException If the feed can't be read
+     */
+    Map<String, BigDecimal> read(Set<String> feeds);
+
+    /**
+     * Registers a listener for pushed updates. Feeds that can only be polled
+     * ignore it.
+     *
+     * @param listener Called with the feed and its new value
+     */
+    default void subscribe(BiConsumer<String, BigDecimal> listener) {
+    }
+}
@@ -0,0 +1,189 @@
+package io.aionios.oracle;
+
+import io.aionios.condition.Condition;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Inverted index from oracle feed thresholds to the capsules waiting on them.
+ * For each feed and comparison, the thresholds are kept sorted, so a value
+ * update finds the capsules whose ORACLE condition it just made true with one
+ * range lookup between the previous and the new value. The work per update
+ * depends on the capsules it affects, not on the number of capsules indexed.
+ * Thread-safe.
+ */
+public class OracleIndex {
+
+    private final Map<String, Map<Condition.Comparison, NavigableMap<BigDecimal, Set<Long>>>> byFeed = new HashMap<>();
+    private final Map<Long, Indexed> byCapsule = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Indexes the ORACLE conditions within a capsule's condition, replacing
+     * what was indexed for it before. Conditions without any are not indexed.
+     *
+     * @return Whether the capsule is indexed
+     */
+    public boolean put(Long capsuleId, Condition condition) {
+        List<Condition.Oracle> leaves = new ArrayList<>();
+        condition.visit(node -> {
+            if (node instanceof Condition.Oracle oracle) {
+                leaves.add(oracle);
+            }
+        });
+
+        lock.lock();
+        try {
+            Indexed previous = byCapsule.get(capsuleId);
+            if (previous != null && previous.condition().equals(condition)) {
+                return true;
+            }
+            removeLocked(capsuleId);
+            if (leaves.isEmpty()) {
+                return false;
+            }
+            for (Condition.Oracle leaf : leaves) {
+                byFeed.computeIfAbsent(leaf.feed(), feed -> new EnumMap<>(Condition.Comparison.class))
+                        .computeIfAbsent(leaf.comparison(), comparison -> new TreeMap<>())
+                        .computeIfAbsent(leaf.threshold(), threshold -> new HashSet<>())
+                        .add(capsuleId);
+            }
+            byCapsule.put(capsuleId, new Indexed(condition, leaves));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(Long capsuleId) {
+        lock.lock();
+        try {
+            removeLocked(capsuleId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the capsules that don't pass the filter
+     */
+    public void retain(Predicate<Long> filter) {
+        lock.lock();
+        try {
+            List<Long> removed = byCapsule.keySet().stream().filter(filter.negate()).toList();
+            removed.forEach(this::removeLocked);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The feeds the indexed capsules wait on
+     */
+    public Set<String> feeds() {
+        lock.lock();
+        try {
+            return Set.copyOf(byFeed.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return byCapsule.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the capsules with an ORACLE condition on the feed that is met at
+     * the current value but was not at the previous one
+     *
+     * @param previous The feed's previous value, or null if it had none
+     * @param current The feed's new value
+     * @return The full conditions of those capsules, by capsule id
+     */
+    public Map<Long, Condition> crossed(String feed, BigDecimal previous, BigDecimal current) {
+        lock.lock();
+        try {
+            Map<Condition.Comparison, NavigableMap<BigDecimal, Set<Long>>> comparisons = byFeed.get(feed);
+            if (comparisons == null) {
+                return Map.of();
+            }
+            Map<Long, Condition> crossed = new HashMap<>();
+            comparisons.forEach((comparison, thresholds) ->
+                    newlyMet(thresholds, comparison, previous, current).values().forEach(ids ->
+                            ids.forEach(id -> crossed.put(id, byCapsule.get(id).condition()))));
+            return crossed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The thresholds the comparison holds for at the current value but not at
+     * the previous one
+     */
+    private static NavigableMap<BigDecimal, Set<Long>> newlyMet(
+            NavigableMap<BigDecimal, Set<Long>> thresholds, Condition.Comparison comparison,
+            BigDecimal previous, BigDecimal current) {
+        int direction = previous == null ? 0 : current.compareTo(previous);
+        if (previous != null && direction == 0) {
+            return new TreeMap<>();
+        }
+        return switch (comparison) {
+            // value >= threshold: thresholds in (previous, current]
+            case GTE -> previous == null ? thresholds.headMap(current, true)
+                    : direction > 0 ? thresholds.subMap(previous, false, current, true) : new TreeMap<>();
+            // value > threshold: thresholds in [previous, current)
+            case GT -> previous == null ? thresholds.headMap(current, false)
+                    : direction > 0 ? thresholds.subMap(previous, true, current, false) : new TreeMap<>();
+            // value <= threshold: thresholds in [current, previous)
+            case LTE -> previous == null ? thresholds.tailMap(current, true)
+                    : direction < 0 ? thresholds.subMap(current, true, previous, false) : new TreeMap<>();
+            // value < threshold: thresholds in (current, previous]
+            case LT -> previous == null ? thresholds.tailMap(current, false)
+                    : direction < 0 ? thresholds.subMap(current, false, previous, true) : new TreeMap<>();
+            case EQ -> thresholds.subMap(current, true, current, true);
+        };
+    }
+
+    private void removeLocked(Long capsuleId) {
+        Indexed indexed = byCapsule.remove(capsuleId);
+        if (indexed == null) {
+            return;
+        }
+        for (Condition.Oracle leaf : indexed.leaves()) {
+            Map<Condition.Comparison, NavigableMap<BigDecimal, Set<Long>>> comparisons = byFeed.get(leaf.feed());
+            NavigableMap<BigDecimal, Set<Long>> thresholds = comparisons != null ? comparisons.get(leaf.comparison()) : null;
+            Set<Long> ids = thresholds != null ? thresholds.get(leaf.threshold()) : null;
+            // A condition may repeat a leaf, in which case the second one finds it gone
+            if (ids != null && ids.remove(capsuleId) && ids.isEmpty()) {
+                thresholds.remove(leaf.threshold());
+                if (thresholds.isEmpty()) {
+                    comparisons.remove(leaf.comparison());
+                    if (comparisons.isEmpty()) {
+                        byFeed.remove(leaf.feed());
+                    }
+                }
+            }
+        }
+    }
+
+    private record Indexed(Condition condition, List<Condition.Oracle> leaves) {
+    }
+}
@@ -0,0 +1,219 @@
+package io.aionios.oracle;
+
+import io.aionios.condition.Condition;
+import io.aionios.condition.ConditionEngine;
+import io.aionios.condition.OracleValueSource;
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.event.SchedulerShardsChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.service.impl.SchedulerShards;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the latest value of every oracle feed that sealed capsules wait on,
+ * and opens those capsules as soon as an update meets their condition. The
+ * distinct feeds in the {@link OracleIndex} are polled together once per
+ * interval, and feeds that push updates deliver them between polls. Each
+ * update looks up the capsules whose threshold it just crossed and evaluates
+ * only their conditions, so the work follows the feed updates rather than the
+ * number of capsules.
+ * <p>
+ * Conditions read their oracle values from here, so evaluating a batch of
+ * capsules reads the snapshot rather than the feed.
+ */
+@Component
+@Slf4j
+public class OracleService implements OracleValueSource {
+
+    private final OracleFeed feed;
+    private final ConditionEngine conditionEngine;
+    private final CapsuleRepository capsuleRepository;
+    private final SchedulerShards schedulerShards;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+
+    private final Map<String, FeedValue> values = new ConcurrentHashMap<>();
+    private final OracleIndex index = new OracleIndex();
+    // Keeps the previous and new value of a feed consistent with the range looked up for them
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    public OracleService(
+            OracleFeed feed,
+            ConditionEngine conditionEngine,
+            CapsuleRepository capsuleRepository,
+            SchedulerShards schedulerShards,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${capsule.oracle.enabled:true}") boolean enabled) {
+        this.feed = feed;
+        this.conditionEngine = conditionEngine;
+        this.capsuleRepository = capsuleRepository;
+        this.schedulerShards = schedulerShards;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (enabled) {
+            feed.subscribe(this::update);
+        }
+    }
+
+    @Override
+    public Map<String, BigDecimal> getValues(Set<String> feeds) {
+        Map<String, BigDecimal> result = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String name : feeds) {
+            FeedValue value = values.get(name);
+            if (value != null) {
+                result.put(name, value.value());
+            } else {
+                missing.add(name);
+            }
+        }
+        // Feeds no indexed capsule waits on yet are read through once
+        if (!missing.isEmpty()) {
+            Map<String, BigDecimal> read = feed.read(missing);
+            read.forEach(this::update);
+            result.putAll(read);
+        }
+        return result;
+    }
+
+    /**
+     * @return The latest value of each feed, with the time it was received
+     */
+    public Map<String, FeedValue> getSnapshot() {
+        return Map.copyOf(values);
+    }
+
+    /**
+     * Starts watching a capsule's condition, if it depends on an oracle feed
+     *
+     * @return Whether the capsule is watched
+     */
+    public boolean track(Long capsuleId, Condition condition) {
+        return enabled && index.put(capsuleId, condition);
+    }
+
+    public int getTrackedCount() {
+        return index.size();
+    }
+
+    @Scheduled(fixedDelayString = "${capsule.oracle.poll-interval-ms:5000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        Set<String> feeds = index.feeds();
+        if (feeds.isEmpty()) {
+            return;
+        }
+        try {
+            feed.read(feeds).forEach(this::update);
+        } catch (Exception e) {
+            // Values stay as they were until the next poll succeeds
+            log.error("Failed to poll {} oracle feeds", feeds.size(), e);
+        }
+    }
+
+    /**
+     * Records a feed's new value and opens the capsules it makes eligible
+     */
+    public void update(String name, BigDecimal value) {
+        Map<Long, Condition> crossed;
+        updateLock.lock();
+        try {
+            FeedValue previous = values.put(name, new FeedValue(value, LocalDateTime.now()));
+            if (previous != null && previous.value().compareTo(value) == 0) {
+                return;
+            }
+            crossed = index.crossed(name, previous != null ? previous.value() : null, value);
+        } finally {
+            updateLock.unlock();
+        }
+        if (!crossed.isEmpty()) {
+            log.debug("Oracle feed {} at {} crossed the thresholds of {} capsules", name, value, crossed.size());
+            open(crossed);
+        }
+    }
+
+    // Runs after commit, like the other status listeners
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCapsuleStatusChanged(CapsuleStatusChangedEvent event) {
+        if (event.status() != Capsule.CapsuleStatus.SEALED) {
+            event.capsuleIds().forEach(index::remove);
+            return;
+        }
+        // Capsules sealed in bulk are picked up by the next conditional scheduler round
+        for (Capsule capsule : event.capsules()) {
+            Capsule.ConditionType type = capsule.getConditionType();
+            if ((type == Capsule.ConditionType.ORACLE || type == Capsule.ConditionType.COMPOUND)
+                    && schedulerShards.owns(capsule.getId())) {
+                try {
+                    Condition condition = conditionEngine.compile(capsule);
+                    // Values already known may meet the condition right away
+                    if (track(capsule.getId(), condition) && hasValues(condition)) {
+                        open(Map.of(capsule.getId(), condition));
+                    }
+                } catch (IllegalArgumentException e) {
+                    log.debug("Capsule {} has an invalid condition: {}", capsule.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    @EventListener
+    public void onShardsChanged(SchedulerShardsChangedEvent event) {
+        index.retain(schedulerShards::owns);
+    }
+
+    private boolean hasValues(Condition condition) {
+        Set<String> feeds = new HashSet<>();
+        condition.visit(node -> {
+            if (node instanceof Condition.Oracle oracle) {
+                feeds.add(oracle.feed());
+            }
+        });
+        return feeds.stream().anyMatch(values::containsKey);
+    }
+
+    private void open(Map<Long, Condition> candidates) {
+        List<Long> met = new ArrayList<>(conditionEngine.evaluate(candidates, conditionEngine.newRound()));
+        if (met.isEmpty()) {
+            return;
+        }
+        List<Long> updated = capsuleRepository.markSealedReadyToOpen(met);
+        met.forEach(index::remove);
+        if (!updated.isEmpty()) {
+            eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(Capsule.CapsuleStatus.READY_TO_OPEN, updated));
+            log.info("Oracle updates marked {} capsules ready to open", updated.size());
+        }
+    }
+
+    /**
+     * @param value The feed's latest value
+     * @param receivedAt When the value was received
+     */
+    public record FeedValue(BigDecimal value, LocalDateTime receivedAt) {
+    }
+}
@@ -0,0 +1,24 @@
+package io.aionios.repository;
+
+import io.aionios.model.CapsuleApproval;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CapsuleApprovalRepository extends JpaRepository<CapsuleApproval, Long> {
+
+    // Served by the unique (capsule_id, signer_address_key) index
+    @Query("SELECT a.capsuleId AS capsuleId, a.signerAddressKey AS signerAddressKey " +
+           "FROM CapsuleApproval a WHERE a.capsuleId IN ?1")
+    List<SignerApproval> findSignersByCapsuleIds(Collection<Long> capsuleIds);
+
+    interface SignerApproval {
+        Long getCapsuleId();
+
+        String getSignerAddressKey();
+    }
+}
@@ -0,0 +1,46 @@
+package io.aionios.repository;
+
+import io.aionios.model.CapsuleOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CapsuleOutboxRepository extends JpaRepository<CapsuleOutboxEntry, Long> {
+
+    @Query("SELECT e.id FROM CapsuleOutboxEntry e WHERE e.status = 'PENDING' AND e.nextAttemptAt <= ?1 ORDER BY e.nextAttemptAt")
+    List<Long> findDueEntryIds(LocalDateTime now, Pageable pageable);
+
+    // Claims an entry for one worker; returns 0 if another worker claimed it first
+    @Transactional
+    @Modifying
+    @Query("UPDATE CapsuleOutboxEntry e SET e.status = 'PROCESSING', e.updatedAt = ?2 WHERE e.id = ?1 AND e.status = 'PENDING'")
+    int claim(Long id, LocalDateTime now);
+
+    // Keeps the claims of entries a live worker is still processing from going stale
+    @Transactional
+    @Modifying
+    @Query("UPDATE CapsuleOutboxEntry e SET e.updatedAt = ?2 WHERE e.id IN ?1 AND e.status = 'PROCESSING'")
+    int renewClaims(Collection<Long> ids, LocalDateTime now);
+
+    // Hands a claimed entry back untouched for a later poll, without counting an attempt
+    @Transactional
+    @Modifying
+    @Query("UPDATE CapsuleOutboxEntry e SET e.status = 'PENDING', e.nextAttemptAt = ?2, e.updatedAt = ?3 " +
+           "WHERE e.id = ?1 AND e.status = 'PROCESSING'")
+    int unclaim(Long id, LocalDateTime nextAttemptAt, LocalDateTime now);
+
+    // Releases entries whose worker died mid-processing; the abandoned run counts as an attempt
+    @Transactional
+    @Modifying
+    @Query("UPDATE CapsuleOutboxEntry e SET e.status = 'PENDING', e.attempts = e.attempts + 1, e.updatedAt = ?2 " +
+           "WHERE e.status = 'PROCESSING' AND e.updatedAt < ?1")
+    int releaseStale(LocalDateTime cutoff, LocalDateTime now);
+}
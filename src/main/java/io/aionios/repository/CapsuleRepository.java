@@ -1,13 +1,22 @@
 package io.aionios.repository;
 
+import io.aionios.dto.CapsuleSummary;
 import io.aionios.model.Capsule;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface CapsuleRepository extends JpaRepository<Capsule, Long> {
@@ -23,8 +32,120 @@ public interface CapsuleRepository extends JpaRepository<Capsule, Long> {
     @Query("SELECT c FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType = 'TIME' AND c.openDate <= ?1")
     List<Capsule> findCapsulesReadyToOpen(LocalDateTime currentTime);
     
-    @Query("SELECT c FROM Capsule c WHERE c.creatorAddress = ?1 OR c.recipientAddress = ?1")
-    List<Capsule> findByCreatorOrRecipient(String address);
+    // Size of the opening backlog, counted on idx_capsules_due
+    @Query("SELECT COUNT(c) FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType = 'TIME' AND c.openDate <= ?1")
+    long countDueCapsules(LocalDateTime currentTime);
+    
+    // Next page of due TIME capsules after the (openDate, id) keyset position, served by idx_capsules_due
+    @Query("SELECT c.id AS id, c.openDate AS openDate FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType = 'TIME' " +
+           "AND c.openDate <= ?1 AND (c.openDate > ?2 OR (c.openDate = ?2 AND c.id > ?3)) ORDER BY c.openDate, c.id")
+    List<DueCapsule> findDueCapsulesAfter(LocalDateTime currentTime, LocalDateTime afterOpenDate, Long afterId, Pageable pageable);
+    
+    // The same page restricted to the given shards of MOD(id, shardCount), for sharded scheduling
+    @Query("SELECT c.id AS id, c.openDate AS openDate FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType = 'TIME' " +
+           "AND c.openDate <= ?1 AND (c.openDate > ?2 OR (c.openDate = ?2 AND c.id > ?3)) " +
+           "AND MOD(c.id, ?4) IN ?5 ORDER BY c.openDate, c.id")
+    List<DueCapsule> findDueCapsulesInShardsAfter(LocalDateTime currentTime, LocalDateTime afterOpenDate, Long afterId,
+                                                  Long shardCount, Collection<Long> shards, Pageable pageable);
+    
+    // Next page of sealed capsules opened by a MULTISIG, ORACLE or COMPOUND condition, in id order
+    @Query("SELECT c.id AS id, c.blockchainId AS blockchainId, c.conditionType AS conditionType, c.conditionData AS conditionData, " +
+           "c.openDate AS openDate " +
+           "FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType <> 'TIME' AND c.id > ?1 ORDER BY c.id")
+    List<ConditionalCapsule> findConditionalCapsulesAfter(Long afterId, Pageable pageable);
+    
+    @Query("SELECT c.id AS id, c.blockchainId AS blockchainId, c.conditionType AS conditionType, c.conditionData AS conditionData, " +
+           "c.openDate AS openDate " +
+           "FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType <> 'TIME' AND c.id > ?1 " +
+           "AND MOD(c.id, ?2) IN ?3 ORDER BY c.id")
+    List<ConditionalCapsule> findConditionalCapsulesInShardsAfter(Long afterId, Long shardCount, Collection<Long> shards,
+                                                                  Pageable pageable);
+    
+    // The same pages restricted to some condition types
+    @Query("SELECT c.id AS id, c.blockchainId AS blockchainId, c.conditionType AS conditionType, c.conditionData AS conditionData, " +
+           "c.openDate AS openDate " +
+           "FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType IN ?1 AND c.id > ?2 ORDER BY c.id")
+    List<ConditionalCapsule> findConditionalCapsulesOfTypesAfter(Collection<Capsule.ConditionType> types, Long afterId,
+                                                                 Pageable pageable);
+    
+    @Query("SELECT c.id AS id, c.blockchainId AS blockchainId, c.conditionType AS conditionType, c.conditionData AS conditionData, " +
+           "c.openDate AS openDate " +
+           "FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType IN ?1 AND c.id > ?2 " +
+           "AND MOD(c.id, ?3) IN ?4 ORDER BY c.id")
+    List<ConditionalCapsule> findConditionalCapsulesOfTypesInShardsAfter(Collection<Capsule.ConditionType> types, Long afterId,
+                                                                         Long shardCount, Collection<Long> shards,
+                                                                         Pageable pageable);
+    
+    // Lowest id of a capsule in the status, or null if there is none
+    @Query("SELECT MIN(c.id) FROM Capsule c WHERE c.status = ?1")
+    Long findLowestIdWithStatus(Capsule.CapsuleStatus status);
+    
+    @Query("SELECT c.id AS id, c.blockchainId AS blockchainId, c.conditionType AS conditionType, c.conditionData AS conditionData, " +
+           "c.openDate AS openDate " +
+           "FROM Capsule c WHERE c.status = 'SEALED' AND c.conditionType <> 'TIME' AND c.id IN ?1")
+    List<ConditionalCapsule> findConditionalCapsulesByIds(Collection<Long> ids);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE Capsule c SET c.status = 'READY_TO_OPEN' WHERE c.id IN ?1 AND c.status = 'SEALED'")
+    int markReadyToOpen(Collection<Long> ids);
+    
+    @Query("SELECT c.id FROM Capsule c WHERE c.id IN ?1 AND c.status = ?2")
+    List<Long> findIdsWithStatus(Collection<Long> ids, Capsule.CapsuleStatus status);
+    
+    /**
+     * Marks the capsules among the ids that are still SEALED ready to open
+     *
+     * @return The ids of the capsules that changed, so that only those are announced
+     */
+    @Transactional
+    default List<Long> markSealedReadyToOpen(Collection<Long> ids) {
+        List<Long> sealed = findIdsWithStatus(ids, Capsule.CapsuleStatus.SEALED);
+        if (sealed.isEmpty() || markReadyToOpen(sealed) == sealed.size()) {
+            return sealed;
+        }
+        // Some moved on between the two statements; another writer may have marked them too
+        return findIdsWithStatus(sealed, Capsule.CapsuleStatus.READY_TO_OPEN);
+    }
+    
+    // Bulk status changes applied by the chain indexer
+    
+    @Query("SELECT c.id FROM Capsule c WHERE c.blockchainId IN ?1 AND c.status IN ?2")
+    List<Long> findIdsByBlockchainIds(Collection<String> blockchainIds, Collection<Capsule.CapsuleStatus> statuses);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE Capsule c SET c.status = ?2 WHERE c.id IN ?1")
+    int updateStatus(Collection<Long> ids, Capsule.CapsuleStatus status);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE Capsule c SET c.status = 'OPENED', c.openedAt = COALESCE(c.openedAt, ?2) WHERE c.id IN ?1")
+    int markOpened(Collection<Long> ids, LocalDateTime openedAt);
+    
+    // Address lookups take the lowercased address key, see Capsule.addressKey
+    
+    List<Capsule> findByCreatorAddressKey(String creatorAddressKey);
+    
+    List<Capsule> findByRecipientAddressKey(String recipientAddressKey);
+    
+    @Query("SELECT c FROM Capsule c WHERE c.creatorAddressKey = ?1 OR c.recipientAddressKey = ?1")
+    List<Capsule> findByCreatorOrRecipient(String addressKey);
+    
+    // Next page of the capsule ids of an address after the given id, for exports
+    @Query("SELECT c.id FROM Capsule c WHERE (c.creatorAddressKey = ?1 OR c.recipientAddressKey = ?1) AND c.id > ?2 " +
+           "ORDER BY c.id")
+    List<Long> findIdsByCreatorOrRecipientAfter(String addressKey, Long afterId, Pageable pageable);
+    
+    // Full capsules with their assets in one query, in id order
+    @Query("SELECT DISTINCT c FROM Capsule c LEFT JOIN FETCH c.assets WHERE c.id IN ?1 ORDER BY c.id")
+    List<Capsule> findWithAssetsByIds(Collection<Long> ids);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE Capsule c SET c.creatorAddressKey = LOWER(c.creatorAddress), " +
+           "c.recipientAddressKey = LOWER(c.recipientAddress) WHERE c.creatorAddressKey IS NULL")
+    int fillMissingAddressKeys();
     
     // Popular capsules - based on view count
     @Query("SELECT c FROM Capsule c WHERE c.status = 'SEALED' OR c.status = 'OPENED' ORDER BY c.viewCount DESC")
@@ -40,4 +161,48 @@ public interface CapsuleRepository extends JpaRepository<Capsule, Long> {
     // Most subscribed capsules
     @Query("SELECT c FROM Capsule c WHERE c.status = 'SEALED' ORDER BY c.subscriptionCount DESC")
     List<Capsule> findMostSubscribedCapsules(org.springframework.data.domain.Pageable pageable);
+    
+    // Summary projections for list views, selected without hydrating entities.
+    // Pages start after the given id and are served by the address key indexes.
+    
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(CapsuleSummary.SELECT + "WHERE c.creatorAddressKey = ?1 AND c.id > ?2 ORDER BY c.id")
+    Stream<CapsuleSummary> streamSummariesByCreator(String creatorAddressKey, Long afterId, Limit limit);
+    
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(CapsuleSummary.SELECT + "WHERE c.recipientAddressKey = ?1 AND c.id > ?2 ORDER BY c.id")
+    Stream<CapsuleSummary> streamSummariesByRecipient(String recipientAddressKey, Long afterId, Limit limit);
+    
+    @Query(CapsuleSummary.SELECT + "WHERE c.id IN ?1")
+    List<CapsuleSummary> findSummariesByIds(Collection<Long> ids);
+    
+    @Query(CapsuleSummary.SELECT + "WHERE c.featured = true")
+    List<CapsuleSummary> findFeaturedSummaries();
+    
+    @Query(CapsuleSummary.SELECT + "WHERE c.status = 'SEALED' OR c.status = 'OPENED' ORDER BY c.viewCount DESC")
+    List<CapsuleSummary> findPopularSummaries(Pageable pageable);
+    
+    @Query(CapsuleSummary.SELECT + "WHERE c.status = 'OPENED' ORDER BY c.openedAt DESC")
+    List<CapsuleSummary> findRecentlyOpenedSummaries(Pageable pageable);
+    
+    @Query(CapsuleSummary.SELECT + "WHERE c.status = 'SEALED' ORDER BY c.subscriptionCount DESC")
+    List<CapsuleSummary> findMostSubscribedSummaries(Pageable pageable);
+    
+    interface DueCapsule {
+        Long getId();
+        
+        LocalDateTime getOpenDate();
+    }
+    
+    interface ConditionalCapsule {
+        Long getId();
+        
+        String getBlockchainId();
+        
+        Capsule.ConditionType getConditionType();
+        
+        String getConditionData();
+        
+        LocalDateTime getOpenDate();
+    }
 }
@@ -0,0 +1,32 @@
+package io.aionios.repository;
+
+import io.aionios.model.SchedulerLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLease, Integer> {
+
+    // Claims a shard that is free, expired or already ours; returns 0 if another node holds it
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.owner = ?2, l.expiresAt = ?3 WHERE l.shard = ?1 " +
+           "AND (l.owner IS NULL OR l.owner = ?2 OR l.expiresAt < ?4)")
+    int claim(Integer shard, String owner, LocalDateTime expiresAt, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.expiresAt = ?2 WHERE l.owner = ?1")
+    int renew(String owner, LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.owner = NULL, l.expiresAt = NULL WHERE l.owner = ?1 AND l.shard IN ?2")
+    int release(String owner, Collection<Integer> shards);
+}
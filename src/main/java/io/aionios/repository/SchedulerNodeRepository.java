@@ -0,0 +1,17 @@
+package io.aionios.repository;
+
+import io.aionios.model.SchedulerNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface SchedulerNodeRepository extends JpaRepository<SchedulerNode, String> {
+
+    long countByHeartbeatAtAfter(LocalDateTime cutoff);
+
+    @Transactional
+    long deleteByHeartbeatAtBefore(LocalDateTime cutoff);
+}
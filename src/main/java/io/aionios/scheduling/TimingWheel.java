@@ -0,0 +1,157 @@
+package io.aionios.scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel. Items are placed in the bucket of the tick they
+ * expire in, on the finest wheel whose span covers them; coarser wheels are
+ * added on demand and cascade their buckets down as time advances. Adding an
+ * item and advancing one tick are O(1) regardless of how many items are
+ * scheduled, and items fire no earlier than their due time and at most one
+ * tick after it.
+ *
+ * @param <T> The item type
+ */
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Level<T>> levels = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private int size;
+
+    /**
+     * @param tickMillis The resolution of the finest wheel
+     * @param wheelSize The number of buckets per wheel
+     * @param startMillis The current time
+     */
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        levels.add(new Level<>(tickMillis, wheelSize, Math.floorDiv(startMillis, tickMillis) * tickMillis));
+    }
+
+    /**
+     * Schedules an item
+     *
+     * @param item The item
+     * @param dueMillis The time the item is due
+     * @return false if the item is already due and was not scheduled
+     */
+    public boolean add(T item, long dueMillis) {
+        // Round up so an item never fires before its due time
+        long expiry = Math.floorDiv(dueMillis + tickMillis - 1, tickMillis) * tickMillis;
+        lock.lock();
+        try {
+            if (!place(new Entry<>(item, expiry))) {
+                return false;
+            }
+            size++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Advances the wheel to the given time
+     *
+     * @param nowMillis The current time
+     * @return The items that became due, in no particular order
+     */
+    public List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            Level<T> root = levels.get(0);
+            while (root.currentTime + tickMillis <= nowMillis) {
+                long time = root.currentTime + tickMillis;
+                for (Level<T> level : levels) {
+                    level.currentTime = Math.floorDiv(time, level.tickMillis) * level.tickMillis;
+                }
+
+                // Cascade coarser wheels first so their items can land in finer ones
+                for (int i = levels.size() - 1; i > 0; i--) {
+                    Level<T> level = levels.get(i);
+                    if (level.currentTime == time) {
+                        for (Entry<T> entry : level.drain(time)) {
+                            if (!place(entry)) {
+                                expired.add(entry.item());
+                            }
+                        }
+                    }
+                }
+                for (Entry<T> entry : root.drain(time)) {
+                    expired.add(entry.item());
+                }
+            }
+            size -= expired.size();
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of scheduled items
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean place(Entry<T> entry) {
+        if (entry.expiry() <= levels.get(0).currentTime) {
+            return false;
+        }
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                Level<T> finer = levels.get(i - 1);
+                long overflowTick = finer.tickMillis * wheelSize;
+                levels.add(new Level<>(overflowTick, wheelSize,
+                        Math.floorDiv(levels.get(0).currentTime, overflowTick) * overflowTick));
+            }
+            Level<T> level = levels.get(i);
+            if (entry.expiry() < level.currentTime + level.tickMillis * wheelSize) {
+                level.bucketFor(entry.expiry()).add(entry);
+                return true;
+            }
+        }
+    }
+
+    private record Entry<T>(T item, long expiry) {
+    }
+
+    private static class Level<T> {
+
+        private final long tickMillis;
+        private final List<List<Entry<T>>> buckets;
+        private long currentTime;
+
+        Level(long tickMillis, int wheelSize, long currentTime) {
+            this.tickMillis = tickMillis;
+            this.currentTime = currentTime;
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new ArrayList<>());
+            }
+        }
+
+        List<Entry<T>> bucketFor(long time) {
+            return buckets.get((int) Math.floorMod(Math.floorDiv(time, tickMillis), (long) buckets.size()));
+        }
+
+        List<Entry<T>> drain(long time) {
+            List<Entry<T>> bucket = bucketFor(time);
+            List<Entry<T>> drained = new ArrayList<>(bucket);
+            bucket.clear();
+            return drained;
+        }
+    }
+}
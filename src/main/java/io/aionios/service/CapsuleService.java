@@ -1,13 +1,22 @@
 package io.aionios.service;
 
+import io.aionios.dto.CapsuleSummary;
 import io.aionios.model.Capsule;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
 public interface CapsuleService {
 
+    enum AddressRole {
+        CREATOR,
+        RECIPIENT,
+        ANY
+    }
+
     /**
      * Creates a new time capsule
      * 
@@ -16,6 +25,17 @@ public interface CapsuleService {
      * @return The created capsule
      */
     Capsule createCapsule(Capsule capsule, MultipartFile content);
+
+    /**
+     * Creates a new time capsule asynchronously. The capsule is stored as
+     * PENDING and its content upload and blockchain submission happen in the
+     * background, after which it becomes SEALED or FAILED.
+     *
+     * @param capsule The capsule to create
+     * @param content The content file to store (optional)
+     * @return The pending capsule
+     */
+    Capsule submitCapsule(Capsule capsule, MultipartFile content);
     
     /**
      * Gets a capsule by its ID
@@ -57,6 +77,28 @@ public interface CapsuleService {
      */
     List<Capsule> getCapsulesByAddress(String address);
     
+    /**
+     * Writes one page of the summaries of capsules associated with an address
+     * as a JSON array, streaming them from the query without loading entities.
+     * Capsules are ordered by id; the next page starts after the last id.
+     *
+     * @param role How the capsules must be associated with the address
+     * @param address The blockchain address, in any letter case
+     * @param afterId Only capsules with a greater id are written (optional)
+     * @param limit Maximum number of capsules to write
+     * @param out The stream to write to
+     */
+    void writeCapsuleSummaries(AddressRole role, String address, Long afterId, int limit, OutputStream out) throws IOException;
+    
+    /**
+     * Writes all capsules associated with an address as a JSON array,
+     * streaming them from the database one at a time
+     *
+     * @param address The blockchain address, in any letter case
+     * @param out The stream to write to
+     */
+    void exportCapsules(String address, OutputStream out) throws IOException;
+    
     /**
      * Updates a capsule's status
      * 
@@ -88,14 +130,14 @@ public interface CapsuleService {
      * @param limit Maximum number of capsules to return
      * @return List of popular capsules
      */
-    List<Capsule> getPopularCapsules(int limit);
+    List<CapsuleSummary> getPopularCapsules(int limit);
     
     /**
      * Gets featured capsules (manually curated)
      *
      * @return List of featured capsules
      */
-    List<Capsule> getFeaturedCapsules();
+    List<CapsuleSummary> getFeaturedCapsules();
     
     /**
      * Gets recently opened capsules
@@ -103,7 +145,7 @@ public interface CapsuleService {
      * @param limit Maximum number of capsules to return
      * @return List of recently opened capsules
      */
-    List<Capsule> getRecentlyOpenedCapsules(int limit);
+    List<CapsuleSummary> getRecentlyOpenedCapsules(int limit);
     
     /**
      * Gets most subscribed sealed capsules
@@ -111,7 +153,7 @@ public interface CapsuleService {
      * @param limit Maximum number of capsules to return
      * @return List of most subscribed capsules
      */
-    List<Capsule> getMostSubscribedCapsules(int limit);
+    List<CapsuleSummary> getMostSubscribedCapsules(int limit);
     
     /**
      * Increments the view count for a capsule
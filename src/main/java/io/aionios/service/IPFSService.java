@@ -2,33 +2,91 @@ package io.aionios.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public interface IPFSService {
 
     /**
      * Uploads content to IPFS
-     * 
+     *
      * @param file The file to upload
      * @return The IPFS hash of the uploaded content
      * @throws IOException If there's an error uploading the content
      */
-    String uploadContent(MultipartFile file) throws IOException;
-    
+    default String uploadContent(MultipartFile file) throws IOException {
+        try (InputStream content = file.getInputStream()) {
+            return uploadContent(file.getOriginalFilename(), content, file.getSize());
+        }
+    }
+
+    /**
+     * Uploads content to IPFS by streaming it, so memory use stays constant
+     * regardless of the content size
+     *
+     * @param fileName The name of the content, may be null
+     * @param content The stream to read the content from; it is not closed
+     * @param sizeHint The expected content length in bytes, or -1 if unknown
+     * @return The IPFS hash of the uploaded content
+     * @throws IOException If there's an error reading or uploading the content
+     */
+    String uploadContent(String fileName, InputStream content, long sizeHint) throws IOException;
+
     /**
      * Retrieves content from IPFS
-     * 
+     *
      * @param ipfsHash The IPFS hash of the content to retrieve
      * @return The content as a byte array
      * @throws IOException If there's an error retrieving the content
      */
     byte[] getContent(String ipfsHash) throws IOException;
-    
+
+    /**
+     * Gets the size of content on IPFS without retrieving it
+     *
+     * @param ipfsHash The IPFS hash of the content
+     * @return The content size in bytes
+     * @throws FileNotFoundException If the content is not on IPFS
+     * @throws IOException If the lookup fails
+     */
+    long getContentSize(String ipfsHash) throws IOException;
+
+    /**
+     * Opens a stream over a byte range of content on IPFS, without loading the
+     * content into memory
+     *
+     * @param ipfsHash The IPFS hash of the content
+     * @param offset The first byte to read
+     * @param length The number of bytes to read, or -1 to read to the end
+     * @return A stream over the requested range, to be closed by the caller
+     * @throws FileNotFoundException If the content is not on IPFS
+     * @throws IOException If there's an error retrieving the content
+     */
+    InputStream openContent(String ipfsHash, long offset, long length) throws IOException;
+
     /**
      * Checks if content exists on IPFS
-     * 
+     *
      * @param ipfsHash The IPFS hash to check
      * @return true if the content exists, false otherwise
      */
     boolean contentExists(String ipfsHash);
+
+    /**
+     * Checks if several pieces of content exist on IPFS
+     *
+     * @param ipfsHashes The IPFS hashes to check
+     * @return Whether each distinct hash exists, in the order given
+     */
+    default Map<String, Boolean> contentExists(Collection<String> ipfsHashes) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (String ipfsHash : ipfsHashes) {
+            result.computeIfAbsent(ipfsHash, this::contentExists);
+        }
+        return result;
+    }
 }
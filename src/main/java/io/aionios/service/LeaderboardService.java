@@ -0,0 +1,38 @@
+package io.aionios.service;
+
+import io.aionios.dto.CapsuleSummary;
+
+import java.util.List;
+
+public interface LeaderboardService {
+
+    enum Board {
+        POPULAR,
+        MOST_SUBSCRIBED,
+        RECENTLY_OPENED
+    }
+
+    /**
+     * Gets the top capsules of a leaderboard without querying the database
+     *
+     * @param board The leaderboard
+     * @param limit Maximum number of capsules to return
+     * @return List of capsules in rank order
+     */
+    List<CapsuleSummary> getTopCapsules(Board board, int limit);
+
+    /**
+     * Gets the top capsules of a leaderboard as a serialized JSON array. The
+     * response is rendered once per change of the board and limit.
+     *
+     * @param board The leaderboard
+     * @param limit Maximum number of capsules to return
+     * @return The JSON array of capsules in rank order
+     */
+    byte[] getTopCapsulesJson(Board board, int limit);
+
+    /**
+     * Reloads all leaderboards from the database
+     */
+    void rebuild();
+}
@@ -0,0 +1,369 @@
+package io.aionios.service.impl;
+
+import io.aionios.cache.WeightedLruCache;
+import io.aionios.service.IPFSService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caching decorator for an {@link IPFSService}. IPFS content is immutable by
+ * hash, so cached blobs never need to be invalidated. Small blobs are kept
+ * on-heap and large ones in files on local disk, each tier bounded by its
+ * total size in bytes. Concurrent misses for the same hash share one fetch.
+ * Each content lookup counts as one hit or miss, whichever tiers it checked.
+ */
+@Slf4j
+public class CachingIPFSService implements IPFSService, Closeable {
+
+    private final IPFSService delegate;
+    private final long memoryEntryMaxBytes;
+    private final long diskMaxBytes;
+    private final Path directory;
+
+    private final WeightedLruCache<String, byte[]> memoryTier;
+    private final WeightedLruCache<String, CachedFile> diskTier;
+    private final Map<String, CompletableFuture<Void>> inflight = new ConcurrentHashMap<>();
+    // Hashes with a background fill queued or running
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+    private final ExecutorService fillExecutor;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+
+    public CachingIPFSService(
+            IPFSService delegate,
+            long memoryMaxBytes,
+            long memoryEntryMaxBytes,
+            long diskMaxBytes,
+            Path directory,
+            ThreadFactory fillThreadFactory) {
+        this.delegate = delegate;
+        this.memoryEntryMaxBytes = memoryEntryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        this.directory = directory;
+        this.memoryTier = new WeightedLruCache<>(memoryMaxBytes, content -> content.length);
+        this.diskTier = new WeightedLruCache<>(diskMaxBytes, CachedFile::size, (hash, file) -> deleteQuietly(file.path()));
+        this.fillExecutor = Executors.newFixedThreadPool(2, fillThreadFactory);
+    }
+
+    @Override
+    public String uploadContent(String fileName, InputStream content, long sizeHint) throws IOException {
+        return delegate.uploadContent(fileName, content, sizeHint);
+    }
+
+    @Override
+    public byte[] getContent(String ipfsHash) throws IOException {
+        byte[] cached = readCached(ipfsHash, true);
+        if (cached != null) {
+            return cached;
+        }
+
+        await(load(ipfsHash));
+        cached = readCached(ipfsHash, false);
+        // A blob bigger than a whole tier is never cached, so fetch it directly
+        return cached != null ? cached : delegate.getContent(ipfsHash);
+    }
+
+    @Override
+    public long getContentSize(String ipfsHash) throws IOException {
+        // Not counted; the content lookup that usually follows is
+        byte[] content = memoryTier.get(ipfsHash);
+        if (content != null) {
+            return content.length;
+        }
+        CachedFile file = diskTier.get(ipfsHash);
+        if (file != null) {
+            return file.size();
+        }
+        return delegate.getContentSize(ipfsHash);
+    }
+
+    @Override
+    public InputStream openContent(String ipfsHash, long offset, long length) throws IOException {
+        byte[] content = memoryTier.get(ipfsHash);
+        if (content != null) {
+            memoryHits.incrementAndGet();
+            int start = (int) Math.min(offset, content.length);
+            int count = (int) (length < 0 ? content.length - start : Math.min(length, content.length - start));
+            return new ByteArrayInputStream(content, start, count);
+        }
+
+        CachedFile file = diskTier.get(ipfsHash);
+        if (file != null) {
+            try {
+                FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ);
+                channel.position(offset);
+                InputStream in = Channels.newInputStream(channel);
+                diskHits.incrementAndGet();
+                return length < 0 ? in : new BoundedInputStream(in, length);
+            } catch (NoSuchFileException e) {
+                // Evicted between the lookup and the open
+            }
+        }
+
+        // Don't make a ranged read wait for the whole blob; serve it from the
+        // backend and fill the cache in the background for later requests.
+        // Seeks while the blob is being filled don't queue another fill.
+        misses.incrementAndGet();
+        if (filling.add(ipfsHash)) {
+            try {
+                fillExecutor.execute(() -> {
+                    try {
+                        load(ipfsHash);
+                    } finally {
+                        filling.remove(ipfsHash);
+                    }
+                });
+            } catch (RuntimeException e) {
+                filling.remove(ipfsHash);
+                throw e;
+            }
+        }
+        return delegate.openContent(ipfsHash, offset, length);
+    }
+
+    @Override
+    public boolean contentExists(String ipfsHash) {
+        return memoryTier.containsKey(ipfsHash) || diskTier.containsKey(ipfsHash) || delegate.contentExists(ipfsHash);
+    }
+
+    @Override
+    public Map<String, Boolean> contentExists(Collection<String> ipfsHashes) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (String ipfsHash : ipfsHashes) {
+            if (memoryTier.containsKey(ipfsHash) || diskTier.containsKey(ipfsHash)) {
+                result.put(ipfsHash, true);
+            } else {
+                result.put(ipfsHash, false);
+                unknown.add(ipfsHash);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            result.putAll(delegate.contentExists(unknown));
+        }
+        return result;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(
+                memoryHits.get(),
+                diskHits.get(),
+                misses.get(),
+                memoryTier.getEvictionCount() + diskTier.getEvictionCount(),
+                loads.get(),
+                loadFailures.get(),
+                memoryTier.getWeight(),
+                diskTier.getWeight());
+    }
+
+    @Override
+    public void close() {
+        fillExecutor.shutdownNow();
+        CacheStats stats = getStats();
+        log.info("IPFS cache closing: {} memory hits, {} disk hits, {} misses, {} evictions",
+                stats.memoryHits(), stats.diskHits(), stats.misses(), stats.evictions());
+        diskTier.clear();
+    }
+
+    /**
+     * @param count Whether the lookup counts towards the hit and miss statistics
+     */
+    private byte[] readCached(String ipfsHash, boolean count) throws IOException {
+        byte[] content = memoryTier.get(ipfsHash);
+        if (content != null) {
+            if (count) {
+                memoryHits.incrementAndGet();
+            }
+            return content;
+        }
+        CachedFile file = diskTier.get(ipfsHash);
+        if (file != null) {
+            try {
+                content = Files.readAllBytes(file.path());
+                if (count) {
+                    diskHits.incrementAndGet();
+                }
+                return content;
+            } catch (NoSuchFileException e) {
+                // Evicted between the lookup and the read
+            }
+        }
+        if (count) {
+            misses.incrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * Fetches a blob into the cache. Concurrent calls for the same hash share
+     * the first caller's fetch.
+     */
+    private CompletableFuture<Void> load(String ipfsHash) {
+        CompletableFuture<Void> fetch = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inflight.putIfAbsent(ipfsHash, fetch);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            if (!memoryTier.containsKey(ipfsHash) && !diskTier.containsKey(ipfsHash)) {
+                fetch(ipfsHash);
+            }
+            fetch.complete(null);
+        } catch (IOException | RuntimeException e) {
+            loadFailures.incrementAndGet();
+            log.warn("Failed to load {} into the IPFS cache", ipfsHash, e);
+            fetch.completeExceptionally(e);
+        } finally {
+            inflight.remove(ipfsHash, fetch);
+        }
+        return fetch;
+    }
+
+    private void fetch(String ipfsHash) throws IOException {
+        long size = delegate.getContentSize(ipfsHash);
+        if (size > diskMaxBytes) {
+            // It would be evicted as soon as it was stored, so don't download it
+            log.debug("{} is too large for the IPFS cache ({} bytes)", ipfsHash, size);
+            return;
+        }
+        loads.incrementAndGet();
+        if (size <= memoryEntryMaxBytes) {
+            memoryTier.put(ipfsHash, delegate.getContent(ipfsHash));
+            return;
+        }
+
+        // Large blobs are streamed to disk so they never sit on the heap
+        Path target = directory.resolve(ipfsHash);
+        Path partial = Files.createTempFile(directory, ipfsHash, ".part");
+        try (InputStream in = delegate.openContent(ipfsHash, 0, -1)) {
+            Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(partial);
+            throw e;
+        }
+        diskTier.put(ipfsHash, new CachedFile(target, Files.size(target)));
+    }
+
+    private static void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete IPFS cache file {}", path, e);
+        }
+    }
+
+    private record CachedFile(Path path, long size) {
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     *
+     * @param memoryHits Lookups answered from the on-heap tier
+     * @param diskHits Lookups answered from the disk tier
+     * @param misses Lookups that had to go to the backend
+     * @param evictions Entries dropped from either tier to make room
+     * @param loads Blobs fetched from the backend into the cache
+     * @param loadFailures Fetches that failed
+     * @param memoryBytes Bytes currently held on-heap
+     * @param diskBytes Bytes currently held on disk
+     */
+    public record CacheStats(
+            long memoryHits,
+            long diskHits,
+            long misses,
+            long evictions,
+            long loads,
+            long loadFailures,
+            long memoryBytes,
+            long diskBytes) {
+
+        public double hitRatio() {
+            long hits = memoryHits + diskHits;
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    /**
+     * Limits a stream to its first {@code remaining} bytes.
+     */
+    private static class BoundedInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.aionios.service.impl;
+
+import io.aionios.cache.WeightedLruCache;
+import io.aionios.dto.CapsuleSummary;
+import io.aionios.event.CapsuleCountersFlushedEvent;
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.repository.CapsuleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for capsule lookups by id and by blockchain id. It holds
+ * detached copies of capsules with their assets loaded and hands out a fresh
+ * copy on every hit, so callers can't change the cached one. Capsules still
+ * being created are not cached, since their rows change without a status
+ * transition.
+ * <p>
+ * Entries are dropped once a status transition commits, and their counters
+ * are refreshed after each counter flush. A load that overlaps an
+ * invalidation is returned but not cached, so a reader can never put back a
+ * row older than the transition. Changes made by other instances are picked
+ * up when entries expire.
+ */
+@Component
+@Slf4j
+public class CapsuleCache {
+
+    private static final Set<Capsule.CapsuleStatus> CACHED_STATUSES = EnumSet.of(
+            Capsule.CapsuleStatus.SEALED,
+            Capsule.CapsuleStatus.READY_TO_OPEN,
+            Capsule.CapsuleStatus.OPENED,
+            Capsule.CapsuleStatus.FAILED);
+
+    private final CapsuleRepository capsuleRepository;
+    private final TransactionTemplate readTransaction;
+    private final boolean enabled;
+    private final long ttlNanos;
+
+    private final WeightedLruCache<Long, Cached> byId;
+    // Blockchain ids never change once set, so this index only needs pruning by size
+    private final WeightedLruCache<String, Long> idsByBlockchainId;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CapsuleCache(
+            CapsuleRepository capsuleRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${capsule.cache.enabled:true}") boolean enabled,
+            @Value("${capsule.cache.max-entries:100000}") long maxEntries,
+            @Value("${capsule.cache.ttl-ms:60000}") long ttlMillis) {
+        this.capsuleRepository = capsuleRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.byId = new WeightedLruCache<>(maxEntries, cached -> 1);
+        this.idsByBlockchainId = new WeightedLruCache<>(maxEntries, id -> 1);
+    }
+
+    public Optional<Capsule> getById(Long id) {
+        if (!enabled) {
+            return capsuleRepository.findById(id);
+        }
+        Capsule cached = lookup(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return load(() -> capsuleRepository.findById(id));
+    }
+
+    public Optional<Capsule> getByBlockchainId(String blockchainId) {
+        if (!enabled) {
+            return capsuleRepository.findByBlockchainId(blockchainId);
+        }
+        Long id = idsByBlockchainId.get(blockchainId);
+        Capsule cached = id != null ? lookup(id) : null;
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        if (id == null) {
+            misses.increment();
+        }
+        return load(() -> capsuleRepository.findByBlockchainId(blockchainId));
+    }
+
+    /**
+     * Drops the capsules, so the next lookup reads them from the database
+     */
+    public void invalidate(Collection<Long> ids) {
+        // Bumped before removing, so loads already under way see it and don't cache
+        invalidations.incrementAndGet();
+        ids.forEach(byId::remove);
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        byId.clear();
+        idsByBlockchainId.clear();
+    }
+
+    // Runs after commit, so a reader can't reload the row as it was before the transition
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCapsuleStatusChanged(CapsuleStatusChangedEvent event) {
+        invalidate(event.capsuleIds());
+    }
+
+    @EventListener
+    public void onCountersFlushed(CapsuleCountersFlushedEvent event) {
+        List<Long> cachedIds = event.capsuleIds().stream().filter(byId::containsKey).toList();
+        if (cachedIds.isEmpty()) {
+            return;
+        }
+        // Hot capsules are the ones whose counters flush most often, so their
+        // counters are refreshed in place rather than the capsules evicted
+        long generation = invalidations.get();
+        for (CapsuleSummary counts : capsuleRepository.findSummariesByIds(cachedIds)) {
+            Cached cached = byId.get(counts.id());
+            if (cached == null) {
+                continue;
+            }
+            Capsule refreshed = copy(cached.capsule());
+            refreshed.setViewCount(counts.viewCount());
+            refreshed.setShareCount(counts.shareCount());
+            refreshed.setSubscriptionCount(counts.subscriptionCount());
+            store(refreshed, cached.loadedAt(), generation);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return A copy of the cached capsule, or null if it is not cached or has expired
+     */
+    private Capsule lookup(Long id) {
+        Cached cached = byId.get(id);
+        if (cached == null || System.nanoTime() - cached.loadedAt() > ttlNanos) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(cached.capsule());
+    }
+
+    private Optional<Capsule> load(Supplier<Optional<Capsule>> query) {
+        long generation = invalidations.get();
+        long loadedAt = System.nanoTime();
+        // Copied inside the transaction, while the assets can still be loaded
+        Capsule loaded = readTransaction.execute(status -> query.get().map(CapsuleCache::copy).orElse(null));
+        if (loaded == null) {
+            return Optional.empty();
+        }
+        if (CACHED_STATUSES.contains(loaded.getStatus())) {
+            store(loaded, loadedAt, generation);
+        }
+        return Optional.of(copy(loaded));
+    }
+
+    /**
+     * Caches a capsule read before the given invalidation generation, unless
+     * an invalidation happened since
+     */
+    private void store(Capsule capsule, long loadedAt, long generation) {
+        if (invalidations.get() != generation) {
+            return;
+        }
+        byId.put(capsule.getId(), new Cached(capsule, loadedAt));
+        if (capsule.getBlockchainId() != null) {
+            idsByBlockchainId.put(capsule.getBlockchainId(), capsule.getId());
+        }
+        // An invalidation between the check and the put may have missed the new entry
+        if (invalidations.get() != generation) {
+            byId.remove(capsule.getId());
+        }
+    }
+
+    private static Capsule copy(Capsule capsule) {
+        return capsule.toBuilder()
+                .assets(capsule.getAssets() != null ? new HashSet<>(capsule.getAssets()) : new HashSet<>())
+                .build();
+    }
+
+    private record Cached(Capsule capsule, long loadedAt) {
+    }
+}
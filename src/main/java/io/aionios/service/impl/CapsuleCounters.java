@@ -0,0 +1,172 @@
+package io.aionios.service.impl;
+
+import io.aionios.event.CapsuleCountersFlushedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-coalescing view, share and subscription counters. Increments only
+ * touch a per-capsule {@link LongAdder}, so a hot capsule never serializes
+ * requests on its row. The accumulated deltas are flushed periodically with
+ * batched {@code SET count = count + ?} updates, which cannot lose
+ * increments made by other nodes. Each batch commits or rolls back as a
+ * whole, so a failed batch can be retried without counting any row twice.
+ */
+@Component
+@Slf4j
+public class CapsuleCounters {
+
+    public enum Counter {
+        VIEWS("view_count"),
+        SHARES("share_count"),
+        SUBSCRIPTIONS("subscription_count");
+
+        private final String column;
+
+        Counter(String column) {
+            this.column = column;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+
+    private final Map<Long, Deltas> pending = new ConcurrentHashMap<>();
+    // Entries dropped from the map get one more flush, in case an increment
+    // raced with their removal
+    private final Queue<Deltas> retired = new ConcurrentLinkedQueue<>();
+
+    public CapsuleCounters(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${capsule.counters.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    public void increment(Long capsuleId, Counter counter) {
+        pending.computeIfAbsent(capsuleId, id -> new Deltas(id)).adders[counter.ordinal()].increment();
+    }
+
+    /**
+     * @return The increments for a capsule not yet written to the database
+     */
+    public long getPending(Long capsuleId, Counter counter) {
+        Deltas deltas = pending.get(capsuleId);
+        return deltas != null ? deltas.adders[counter.ordinal()].sum() : 0;
+    }
+
+    /**
+     * @param persisted The value read from the database, may be null
+     * @return The persisted value plus the increments not yet written
+     */
+    public int withPending(Long capsuleId, Counter counter, Integer persisted) {
+        long total = (persisted != null ? persisted : 0) + getPending(capsuleId, counter);
+        return (int) Math.min(Integer.MAX_VALUE, total);
+    }
+
+    @Scheduled(fixedDelayString = "${capsule.counters.flush-interval-ms:1000}")
+    public void flush() {
+        List<List<Object[]>> updates = new ArrayList<>();
+        for (Counter counter : Counter.values()) {
+            updates.add(new ArrayList<>());
+        }
+
+        List<Long> drained = new ArrayList<>();
+        Deltas orphan;
+        while ((orphan = retired.poll()) != null) {
+            drain(orphan, updates);
+        }
+        for (Deltas deltas : pending.values()) {
+            if (drain(deltas, updates)) {
+                deltas.idleFlushes = 0;
+                drained.add(deltas.capsuleId);
+            } else if (++deltas.idleFlushes >= 2 && pending.remove(deltas.capsuleId, deltas)) {
+                retired.add(deltas);
+            }
+        }
+
+        int rows = 0;
+        for (Counter counter : Counter.values()) {
+            List<Object[]> batch = updates.get(counter.ordinal());
+            if (batch.isEmpty()) {
+                continue;
+            }
+            // Rows inserted through the builder may hold NULL counters
+            String sql = "UPDATE capsules SET " + counter.column + " = COALESCE(" + counter.column + ", 0) + ? WHERE id = ?";
+            for (int from = 0; from < batch.size(); from += batchSize) {
+                List<Object[]> chunk = batch.subList(from, Math.min(batch.size(), from + batchSize));
+                try {
+                    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, chunk));
+                    rows += chunk.size();
+                } catch (RuntimeException e) {
+                    // The batch was rolled back, so put its deltas back for the next flush to retry
+                    log.error("Failed to flush {} {} counters", chunk.size(), counter, e);
+                    for (Object[] update : chunk) {
+                        pending.computeIfAbsent((Long) update[1], id -> new Deltas(id))
+                                .adders[counter.ordinal()].add((Long) update[0]);
+                    }
+                }
+            }
+        }
+
+        if (rows > 0) {
+            log.debug("Flushed {} counter updates for {} capsules", rows, drained.size());
+            eventPublisher.publishEvent(new CapsuleCountersFlushedEvent(drained));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    /**
+     * @return true if the entry had any increments to flush
+     */
+    private static boolean drain(Deltas deltas, List<List<Object[]>> updates) {
+        boolean any = false;
+        for (Counter counter : Counter.values()) {
+            long delta = deltas.adders[counter.ordinal()].sumThenReset();
+            if (delta != 0) {
+                updates.get(counter.ordinal()).add(new Object[] {delta, deltas.capsuleId});
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    private static final class Deltas {
+
+        private final Long capsuleId;
+        private final LongAdder[] adders = new LongAdder[Counter.values().length];
+        // Only touched by the flushing thread
+        private int idleFlushes;
+
+        private Deltas(Long capsuleId) {
+            this.capsuleId = capsuleId;
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package io.aionios.service.impl;
+
+import io.aionios.blockchain.BlockchainBatcher;
+import io.aionios.blockchain.CapsuleSubmission;
+import io.aionios.config.ExecutionMode;
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.model.CapsuleOutboxEntry;
+import io.aionios.repository.CapsuleOutboxRepository;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.service.IPFSService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transactional outbox for asynchronous capsule creation. A capsule is stored
+ * as PENDING together with an outbox entry in one transaction, and a worker
+ * pool later uploads its content and submits it to the blockchain, retrying
+ * with backoff before marking the capsule FAILED. No database connection or
+ * request thread is held while waiting on IPFS or the chain.
+ * <p>
+ * A node renews the claims of the entries it is processing on every poll, so
+ * only the entries of a node that stopped are released and retried once
+ * stale. Such a release counts as a failed attempt.
+ * <p>
+ * Any node may process an entry, so the spool directory must be shared by all
+ * of them. A node that can't see an entry's spooled content hands the entry
+ * back instead of failing it.
+ */
+@Component
+@Slf4j
+public class CapsuleCreationOutbox {
+
+    private final CapsuleRepository capsuleRepository;
+    private final CapsuleOutboxRepository outboxRepository;
+    private final BlockchainBatcher blockchainBatcher;
+    private final IPFSService ipfsService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Path spoolDirectory;
+    private final int maxInFlight;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long staleAfterMillis;
+
+    private final ExecutorService executor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Set<Long> claimed = ConcurrentHashMap.newKeySet();
+
+    public CapsuleCreationOutbox(
+            CapsuleRepository capsuleRepository,
+            CapsuleOutboxRepository outboxRepository,
+            BlockchainBatcher blockchainBatcher,
+            IPFSService ipfsService,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventPublisher,
+            ExecutionMode executionMode,
+            @Value("${capsule.outbox.spool-directory}") String spoolDirectory,
+            @Value("${capsule.outbox.workers:8}") int workers,
+            @Value("${capsule.outbox.batch-size:50}") int batchSize,
+            @Value("${capsule.outbox.max-in-flight:200}") int maxInFlight,
+            @Value("${capsule.outbox.max-attempts:5}") int maxAttempts,
+            @Value("${capsule.outbox.retry-backoff-ms:2000}") long retryBackoffMillis,
+            @Value("${capsule.outbox.stale-after-ms:600000}") long staleAfterMillis) throws IOException {
+        this.capsuleRepository = capsuleRepository;
+        this.outboxRepository = outboxRepository;
+        this.blockchainBatcher = blockchainBatcher;
+        this.ipfsService = ipfsService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        if (spoolDirectory.isBlank()) {
+            throw new IllegalStateException("capsule.outbox.spool-directory must be set to a directory shared by all nodes");
+        }
+        this.spoolDirectory = Files.createDirectories(Path.of(spoolDirectory));
+        this.maxInFlight = maxInFlight;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.staleAfterMillis = staleAfterMillis;
+        // Work in flight is capped by maxInFlight, so virtual threads need no pool limit
+        this.executor = executionMode.newBlockingExecutor("capsule-outbox", workers);
+    }
+
+    /**
+     * Stores a capsule as PENDING and queues its creation. The content is
+     * moved to the spool directory first, so the transaction only covers the
+     * two inserts.
+     *
+     * @param capsule The capsule to create
+     * @param content The content file to store (optional)
+     * @return The saved PENDING capsule
+     */
+    public Capsule enqueue(Capsule capsule, MultipartFile content) {
+        Path spooled = null;
+        if (content != null && !content.isEmpty()) {
+            try {
+                spooled = spoolDirectory.resolve(UUID.randomUUID().toString());
+                content.transferTo(spooled);
+            } catch (IOException e) {
+                log.error("Failed to spool capsule content", e);
+                throw new RuntimeException("Failed to spool capsule content", e);
+            }
+        }
+
+        Path contentPath = spooled;
+        capsule.setStatus(Capsule.CapsuleStatus.PENDING);
+        Capsule saved = transactionTemplate.execute(status -> {
+            Capsule pending = capsuleRepository.save(capsule);
+            outboxRepository.save(CapsuleOutboxEntry.builder()
+                    .capsuleId(pending.getId())
+                    .status(CapsuleOutboxEntry.OutboxStatus.PENDING)
+                    .contentPath(contentPath != null ? contentPath.toString() : null)
+                    .contentName(contentPath != null ? content.getOriginalFilename() : null)
+                    .contentSize(contentPath != null ? content.getSize() : null)
+                    .build());
+            return pending;
+        });
+
+        log.info("Queued capsule {} for asynchronous creation", saved.getId());
+        return saved;
+    }
+
+    @Scheduled(fixedDelayString = "${capsule.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        LocalDateTime now = LocalDateTime.now();
+        if (!claimed.isEmpty()) {
+            outboxRepository.renewClaims(List.copyOf(claimed), now);
+        }
+        int released = outboxRepository.releaseStale(now.minus(Duration.ofMillis(staleAfterMillis)), now);
+        if (released > 0) {
+            log.warn("Released {} stale capsule outbox entries", released);
+        }
+
+        // Only take what can be in flight at once, leaving the rest for other nodes
+        int capacity = Math.min(batchSize, maxInFlight - inFlight.get());
+        if (capacity <= 0) {
+            return;
+        }
+
+        List<Long> due = outboxRepository.findDueEntryIds(now, PageRequest.of(0, capacity));
+        for (Long entryId : due) {
+            if (outboxRepository.claim(entryId, LocalDateTime.now()) == 1) {
+                claimed.add(entryId);
+                inFlight.incrementAndGet();
+                try {
+                    executor.execute(() -> {
+                        CompletableFuture<Void> processing = null;
+                        try {
+                            processing = process(entryId);
+                        } finally {
+                            // An entry whose processing threw is released once stale, like one whose node stopped
+                            if (processing != null) {
+                                processing.whenComplete((result, error) -> release(entryId));
+                            } else {
+                                release(entryId);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; the claim goes stale and is picked up again
+                    release(entryId);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void release(Long entryId) {
+        claimed.remove(entryId);
+        inFlight.decrementAndGet();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Claimed entries that don't finish are released again once stale
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<Void> process(Long entryId) {
+        CapsuleOutboxEntry entry = outboxRepository.findById(entryId).orElse(null);
+        if (entry == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Released as stale by a node that stopped mid-processing too often
+        if (entry.getAttempts() >= maxAttempts) {
+            fail(entry, new IllegalStateException("Abandoned by its worker " + entry.getAttempts() + " times"));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Capsule capsule;
+        try {
+            capsule = capsuleRepository.findById(entry.getCapsuleId())
+                    .orElseThrow(() -> new IllegalStateException("Capsule " + entry.getCapsuleId() + " no longer exists"));
+
+            // Content this node can't see is not the capsule's fault; leave it for a node that can
+            if (entry.getContentPath() != null && capsule.getIpfsHash() == null
+                    && !Files.exists(Path.of(entry.getContentPath()))) {
+                log.warn("Spooled content {} of capsule {} is not visible on this node, handing it back",
+                        entry.getContentPath(), entry.getCapsuleId());
+                LocalDateTime now = LocalDateTime.now();
+                outboxRepository.unclaim(entryId, now.plus(Duration.ofMillis(retryBackoffMillis)), now);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Store the hash right away so a retry does not upload the content again
+            if (entry.getContentPath() != null && capsule.getIpfsHash() == null) {
+                try (InputStream in = Files.newInputStream(Path.of(entry.getContentPath()))) {
+                    capsule.setIpfsHash(ipfsService.uploadContent(entry.getContentName(), in, entry.getContentSize()));
+                }
+                capsule = capsuleRepository.save(capsule);
+                log.info("Content for capsule {} uploaded to IPFS with hash: {}", capsule.getId(), capsule.getIpfsHash());
+            }
+        } catch (Exception e) {
+            fail(entry, e);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // The worker is released while the submission waits for its batch, so
+        // concurrent entries end up in the same chain transaction
+        Capsule uploaded = capsule;
+        return blockchainBatcher.createCapsule(CapsuleSubmission.of(uploaded))
+                .thenAccept(blockchainId -> seal(entry, uploaded, blockchainId))
+                .exceptionally(e -> {
+                    fail(entry, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    return null;
+                });
+    }
+
+    private void seal(CapsuleOutboxEntry entry, Capsule capsule, String blockchainId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            capsule.setBlockchainId(blockchainId);
+            capsule.setStatus(Capsule.CapsuleStatus.SEALED);
+            capsuleRepository.save(capsule);
+            entry.setStatus(CapsuleOutboxEntry.OutboxStatus.DONE);
+            outboxRepository.save(entry);
+        });
+        log.info("Capsule {} created on blockchain with ID: {}", capsule.getId(), blockchainId);
+        eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(capsule));
+        deleteSpooledContent(entry);
+    }
+
+    private void fail(CapsuleOutboxEntry entry, Throwable error) {
+        int attempts = entry.getAttempts() + 1;
+        boolean exhausted = attempts >= maxAttempts;
+        log.error("Attempt {} of {} to create capsule {} failed", attempts, maxAttempts, entry.getCapsuleId(), error);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            entry.setAttempts(attempts);
+            entry.setLastError(truncate(String.valueOf(error.getMessage())));
+            if (exhausted) {
+                entry.setStatus(CapsuleOutboxEntry.OutboxStatus.FAILED);
+                capsuleRepository.findById(entry.getCapsuleId()).ifPresent(capsule -> {
+                    capsule.setStatus(Capsule.CapsuleStatus.FAILED);
+                    capsuleRepository.save(capsule);
+                });
+            } else {
+                // Exponential backoff: base, 2x base, 4x base, ...
+                long delayMillis = retryBackoffMillis << Math.min(attempts - 1, 16);
+                entry.setStatus(CapsuleOutboxEntry.OutboxStatus.PENDING);
+                entry.setNextAttemptAt(LocalDateTime.now().plus(Duration.ofMillis(delayMillis)));
+            }
+            outboxRepository.save(entry);
+        });
+
+        if (exhausted) {
+            eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(
+                    Capsule.CapsuleStatus.FAILED, List.of(entry.getCapsuleId())));
+            deleteSpooledContent(entry);
+        }
+    }
+
+    private void deleteSpooledContent(CapsuleOutboxEntry entry) {
+        if (entry.getContentPath() == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Path.of(entry.getContentPath()));
+        } catch (IOException e) {
+            log.warn("Could not delete spooled content {}", entry.getContentPath(), e);
+        }
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= 2000 ? message : message.substring(0, 2000);
+    }
+}
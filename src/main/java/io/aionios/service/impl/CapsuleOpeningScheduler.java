@@ -0,0 +1,250 @@
+package io.aionios.service.impl;
+
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.event.SchedulerShardsChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.scheduling.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Opens TIME capsules within about a tick of their open date. Capsules due
+ * within a rolling horizon are loaded from the database in small keyset
+ * pages into an in-memory {@link TimingWheel}, which fires their transition
+ * to READY_TO_OPEN. Capsules sealed after their window was loaded are added
+ * as they are sealed. The cron sweep in CapsuleServiceImpl stays in place as
+ * a safety net.
+ * <p>
+ * When scheduling is clustered, only capsules of the shards this instance owns
+ * are loaded, and the horizon is reloaded whenever the owned shards change.
+ * Capsules sealed by this instance are scheduled whatever their shard, since
+ * their owner may already have loaded past them.
+ */
+@Component
+@Slf4j
+public class CapsuleOpeningScheduler {
+
+    private static final LocalDateTime START = LocalDateTime.of(1, 1, 1, 0, 0);
+
+    private final CapsuleRepository capsuleRepository;
+    private final SchedulerShards schedulerShards;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final long tickMillis;
+    private final long horizonMillis;
+    private final int pageSize;
+
+    private final TimingWheel<Long> wheel;
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService ticker;
+    // Reloads run here, off the scheduler heartbeat that reports the shard changes
+    private final ExecutorService reloader;
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    // Keyset position of the last capsule loaded from the database
+    private LocalDateTime loadedOpenDate = START;
+    private Long loadedId = 0L;
+    private volatile LocalDateTime loadedUntil;
+
+    public CapsuleOpeningScheduler(
+            CapsuleRepository capsuleRepository,
+            SchedulerShards schedulerShards,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${capsule.wheel.enabled:true}") boolean enabled,
+            @Value("${capsule.wheel.tick-ms:1000}") long tickMillis,
+            @Value("${capsule.wheel.horizon-ms:900000}") long horizonMillis,
+            @Value("${capsule.wheel.page-size:1000}") int pageSize) {
+        this.capsuleRepository = capsuleRepository;
+        this.schedulerShards = schedulerShards;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.tickMillis = tickMillis;
+        this.horizonMillis = horizonMillis;
+        this.pageSize = pageSize;
+        this.wheel = new TimingWheel<>(tickMillis, 60, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "capsule-timing-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reloader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "capsule-timing-wheel-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        reloader.shutdownNow();
+    }
+
+    /**
+     * Loads the capsules that become due within the horizon and have not been
+     * loaded yet. Capsules already past due are opened right away.
+     */
+    @Scheduled(fixedDelayString = "${capsule.wheel.refill-interval-ms:30000}")
+    public void refill() {
+        if (!enabled) {
+            return;
+        }
+
+        // A lock rather than synchronized, so a virtual thread waiting on the database doesn't pin its carrier
+        refillLock.lock();
+        try {
+            LocalDateTime until = LocalDateTime.now().plusNanos(horizonMillis * 1_000_000);
+            Set<Integer> shards = schedulerShards.getOwnedShards();
+            int loaded = 0;
+            while (true) {
+                List<CapsuleRepository.DueCapsule> page = schedulerShards.findDueCapsulesAfter(
+                        shards, until, loadedOpenDate, loadedId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                List<Long> alreadyDue = new ArrayList<>();
+                for (CapsuleRepository.DueCapsule capsule : page) {
+                    if (!schedule(capsule.getId(), capsule.getOpenDate())) {
+                        alreadyDue.add(capsule.getId());
+                    }
+                }
+                open(alreadyDue);
+
+                CapsuleRepository.DueCapsule last = page.get(page.size() - 1);
+                loadedOpenDate = last.getOpenDate();
+                loadedId = last.getId();
+                loaded += page.size();
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+            loadedUntil = until;
+
+            if (loaded > 0) {
+                log.info("Loaded {} capsules due before {} into the timing wheel ({} scheduled)", loaded, until, wheel.size());
+            }
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    /**
+     * Loads the horizon again from the start for the shards now owned. Capsules
+     * already in the wheel stay there and are not added twice. The reload runs
+     * in the background, so the heartbeat can go on renewing leases.
+     */
+    @EventListener
+    public void onShardsChanged(SchedulerShardsChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        reloader.execute(this::reload);
+    }
+
+    private void reload() {
+        refillLock.lock();
+        try {
+            loadedOpenDate = START;
+            loadedId = 0L;
+            refill();
+        } catch (Exception e) {
+            // The next scheduled refill loads from where this one stopped
+            log.error("Failed to reload the timing wheel for the owned shards", e);
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    @EventListener
+    public void onCapsuleStatusChanged(CapsuleStatusChangedEvent event) {
+        LocalDateTime window = loadedUntil;
+        if (!enabled || window == null || event.status() != Capsule.CapsuleStatus.SEALED) {
+            return;
+        }
+
+        // Capsules due after the loaded window are picked up by a later refill
+        List<Long> alreadyDue = new ArrayList<>();
+        for (Capsule capsule : event.capsules()) {
+            if (capsule.getConditionType() == Capsule.ConditionType.TIME
+                    && capsule.getOpenDate() != null
+                    && !capsule.getOpenDate().isAfter(window)
+                    && !schedule(capsule.getId(), capsule.getOpenDate())) {
+                alreadyDue.add(capsule.getId());
+            }
+        }
+        open(alreadyDue);
+    }
+
+    /**
+     * @return The number of capsules waiting in the wheel
+     */
+    public int getScheduledCount() {
+        return wheel.size();
+    }
+
+    /**
+     * @return false if the capsule is already due and has to be opened now
+     */
+    private boolean schedule(Long capsuleId, LocalDateTime openDate) {
+        if (!scheduled.add(capsuleId)) {
+            return true;
+        }
+        long dueMillis = openDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (wheel.add(capsuleId, dueMillis)) {
+            return true;
+        }
+        scheduled.remove(capsuleId);
+        return false;
+    }
+
+    private void tick() {
+        try {
+            List<Long> due = wheel.advance(System.currentTimeMillis());
+            if (!due.isEmpty()) {
+                due.forEach(scheduled::remove);
+                open(due);
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking; capsules missed here are still opened by the cron sweep
+            log.error("Failed to open capsules from the timing wheel", e);
+        }
+    }
+
+    private void open(List<Long> capsuleIds) {
+        for (int from = 0; from < capsuleIds.size(); from += pageSize) {
+            List<Long> chunk = capsuleIds.subList(from, Math.min(capsuleIds.size(), from + pageSize));
+            List<Long> updated = capsuleRepository.markSealedReadyToOpen(chunk);
+            if (!updated.isEmpty()) {
+                eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(Capsule.CapsuleStatus.READY_TO_OPEN, updated));
+                log.info("Timing wheel marked {} capsules ready to open", updated.size());
+            }
+        }
+    }
+}
@@ -1,34 +1,72 @@
 package io.aionios.service.impl;
 
-import io.aionios.blockchain.BlockchainService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.aionios.blockchain.BlockchainBatcher;
+import io.aionios.blockchain.CapsuleSubmission;
+import io.aionios.condition.ConditionEngine;
+import io.aionios.dto.CapsuleSummary;
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.metrics.RequestTimings;
 import io.aionios.model.Capsule;
 import io.aionios.repository.CapsuleRepository;
 import io.aionios.service.CapsuleService;
 import io.aionios.service.IPFSService;
+import io.aionios.service.LeaderboardService;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CapsuleServiceImpl implements CapsuleService {
 
+    private static final int EXPORT_PAGE_SIZE = 500;
+
     private final CapsuleRepository capsuleRepository;
-    private final BlockchainService blockchainService;
+    private final CapsuleCache capsuleCache;
+    private final BlockchainBatcher blockchainBatcher;
     private final IPFSService ipfsService;
+    private final CapsuleCreationOutbox capsuleCreationOutbox;
+    private final DueCapsuleSweeper dueCapsuleSweeper;
+    private final CapsuleCounters capsuleCounters;
+    private final ConditionEngine conditionEngine;
+    private final LeaderboardService leaderboardService;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
 
+    // Not transactional: no connection is held while the upload and the chain batch are awaited
     @Override
-    @Transactional
     public Capsule createCapsule(Capsule capsule, MultipartFile content) {
         log.info("Creating new time capsule: {}", capsule.getTitle());
+        validateCondition(capsule);
         
         // If content is provided, store it on IPFS
         if (content != null && !content.isEmpty()) {
@@ -44,14 +82,8 @@ public class CapsuleServiceImpl implements CapsuleService {
         
         // Create the capsule on the blockchain
         try {
-            String blockchainId = blockchainService.createCapsule(
-                capsule.getTitle(),
-                capsule.getIpfsHash(),
-                capsule.getCreatorAddress(),
-                capsule.getRecipientAddress(),
-                capsule.getConditionType(),
-                capsule.getConditionData()
-            );
+            String blockchainId = RequestTimings.time(RequestTimings.Layer.CHAIN,
+                    () -> blockchainBatcher.await(blockchainBatcher.createCapsule(CapsuleSubmission.of(capsule))));
             
             capsule.setBlockchainId(blockchainId);
             log.info("Capsule created on blockchain with ID: {}", blockchainId);
@@ -64,32 +96,100 @@ public class CapsuleServiceImpl implements CapsuleService {
         capsule.setStatus(Capsule.CapsuleStatus.SEALED);
         
         // Save to database
-        return capsuleRepository.save(capsule);
+        Capsule saved = capsuleRepository.save(capsule);
+        eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(saved));
+        return saved;
+    }
+
+    @Override
+    public Capsule submitCapsule(Capsule capsule, MultipartFile content) {
+        log.info("Submitting new time capsule for asynchronous creation: {}", capsule.getTitle());
+        validateCondition(capsule);
+        return capsuleCreationOutbox.enqueue(capsule, content);
     }
 
     @Override
     public Optional<Capsule> getCapsuleById(Long id) {
-        return capsuleRepository.findById(id);
+        return capsuleCache.getById(id);
     }
 
     @Override
     public Optional<Capsule> getCapsuleByBlockchainId(String blockchainId) {
-        return capsuleRepository.findByBlockchainId(blockchainId);
+        return capsuleCache.getByBlockchainId(blockchainId);
     }
 
     @Override
     public List<Capsule> getCapsulesByCreator(String creatorAddress) {
-        return capsuleRepository.findByCreatorAddress(creatorAddress);
+        return capsuleRepository.findByCreatorAddressKey(Capsule.addressKey(creatorAddress));
     }
 
     @Override
     public List<Capsule> getCapsulesByRecipient(String recipientAddress) {
-        return capsuleRepository.findByRecipientAddress(recipientAddress);
+        return capsuleRepository.findByRecipientAddressKey(Capsule.addressKey(recipientAddress));
     }
 
     @Override
     public List<Capsule> getCapsulesByAddress(String address) {
-        return capsuleRepository.findByCreatorOrRecipient(address);
+        return capsuleRepository.findByCreatorOrRecipient(Capsule.addressKey(address));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void writeCapsuleSummaries(AddressRole role, String address, Long afterId, int limit, OutputStream out) throws IOException {
+        String key = Capsule.addressKey(address);
+        long after = afterId != null ? afterId : 0L;
+        try (Stream<CapsuleSummary> rows = switch (role) {
+                 case CREATOR -> capsuleRepository.streamSummariesByCreator(key, after, Limit.of(limit));
+                 case RECIPIENT -> capsuleRepository.streamSummariesByRecipient(key, after, Limit.of(limit));
+                 // Two index range scans merged by id, rather than one OR over the table
+                 case ANY -> mergeById(
+                         capsuleRepository.streamSummariesByCreator(key, after, Limit.of(limit)),
+                         capsuleRepository.streamSummariesByRecipient(key, after, Limit.of(limit)))
+                         .limit(limit);
+             };
+             JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            // Let the generator buffer rows instead of flushing after each one
+            ObjectWriter writer = objectMapper.writerFor(CapsuleSummary.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            json.writeStartArray();
+            for (CapsuleSummary row : (Iterable<CapsuleSummary>) rows::iterator) {
+                writer.writeValue(json, row.withCounts(
+                        capsuleCounters.withPending(row.id(), CapsuleCounters.Counter.VIEWS, row.viewCount()),
+                        capsuleCounters.withPending(row.id(), CapsuleCounters.Counter.SHARES, row.shareCount()),
+                        capsuleCounters.withPending(row.id(), CapsuleCounters.Counter.SUBSCRIPTIONS, row.subscriptionCount())));
+            }
+            json.writeEndArray();
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportCapsules(String address, OutputStream out) throws IOException {
+        String addressKey = Capsule.addressKey(address);
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            ObjectWriter writer = objectMapper.writerFor(Capsule.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            json.writeStartArray();
+            Long afterId = 0L;
+            while (true) {
+                List<Long> ids = capsuleRepository.findIdsByCreatorOrRecipientAfter(
+                        addressKey, afterId, PageRequest.of(0, EXPORT_PAGE_SIZE));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                // Each page and its assets are loaded with one query rather than one per capsule
+                for (Capsule capsule : capsuleRepository.findWithAssetsByIds(ids)) {
+                    writer.writeValue(json, capsule);
+                }
+                // Keep the persistence context from growing with the export
+                entityManager.clear();
+                afterId = ids.get(ids.size() - 1);
+                if (ids.size() < EXPORT_PAGE_SIZE) {
+                    break;
+                }
+            }
+            json.writeEndArray();
+        }
     }
 
     @Override
@@ -104,11 +204,14 @@ public class CapsuleServiceImpl implements CapsuleService {
             capsule.setOpenedAt(LocalDateTime.now());
         }
         
-        return capsuleRepository.save(capsule);
+        Capsule saved = capsuleRepository.save(capsule);
+        eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(saved));
+        return saved;
     }
 
+    // Not transactional: the checks read a snapshot, the chain batch is awaited without
+    // holding a connection, and the result is applied in a short transaction of its own
     @Override
-    @Transactional
     public Optional<Capsule> openCapsule(Long id, String requesterAddress) {
         Optional<Capsule> optionalCapsule = capsuleRepository.findById(id);
         
@@ -137,23 +240,34 @@ public class CapsuleServiceImpl implements CapsuleService {
                 log.warn("Attempt to open time-based capsule before open date");
                 return Optional.empty();
             }
+        } else if (capsule.getStatus() == Capsule.CapsuleStatus.SEALED) {
+            // Capsules marked READY_TO_OPEN already met their condition
+            try {
+                if (!conditionEngine.isMet(capsule)) {
+                    log.warn("Attempt to open {} capsule {} before its condition is met", capsule.getConditionType(), id);
+                    return Optional.empty();
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Capsule {} has an invalid condition: {}", id, e.getMessage());
+                return Optional.empty();
+            }
         }
         
-        // TODO: Implement checks for other condition types
-        
         try {
             // Open the capsule on the blockchain
-            boolean success = blockchainService.openCapsule(
-                capsule.getBlockchainId(),
-                requesterAddress
-            );
+            boolean success = RequestTimings.time(RequestTimings.Layer.CHAIN, () -> blockchainBatcher.await(
+                blockchainBatcher.openCapsule(capsule.getBlockchainId(), requesterAddress)));
             
             if (success) {
-                capsule.setStatus(Capsule.CapsuleStatus.OPENED);
-                capsule.setOpenedAt(LocalDateTime.now());
-                capsuleRepository.save(capsule);
+                Capsule opened = transactionTemplate.execute(status -> markOpened(id));
+                if (opened == null) {
+                    // Opened or changed by someone else while the chain call was in flight
+                    return capsuleRepository.findById(id)
+                            .filter(current -> current.getStatus() == Capsule.CapsuleStatus.OPENED);
+                }
+                eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(opened));
                 log.info("Capsule {} successfully opened by {}", id, requesterAddress);
-                return Optional.of(capsule);
+                return Optional.of(opened);
             } else {
                 log.error("Failed to open capsule on blockchain");
                 return Optional.empty();
@@ -164,21 +278,143 @@ public class CapsuleServiceImpl implements CapsuleService {
         }
     }
 
+    /**
+     * @return The capsule, now opened, or null if it is no longer waiting to be opened
+     */
+    private Capsule markOpened(Long id) {
+        Capsule capsule = capsuleRepository.findById(id).orElse(null);
+        if (capsule == null || (capsule.getStatus() != Capsule.CapsuleStatus.SEALED
+                && capsule.getStatus() != Capsule.CapsuleStatus.READY_TO_OPEN)) {
+            return null;
+        }
+        capsule.setStatus(Capsule.CapsuleStatus.OPENED);
+        capsule.setOpenedAt(LocalDateTime.now());
+        return capsuleRepository.save(capsule);
+    }
+
+    /**
+     * Rejects a capsule whose condition data can't be compiled, before
+     * anything is stored for it
+     */
+    private void validateCondition(Capsule capsule) {
+        Capsule.ConditionType type = capsule.getConditionType();
+        if (type != null && type != Capsule.ConditionType.TIME) {
+            conditionEngine.compile(null, type, capsule.getConditionData(), capsule.getOpenDate());
+        }
+    }
+
+    // Rows saved before address keys existed can't be found by address until filled in
+    @EventListener(ApplicationReadyEvent.class)
+    public void fillMissingAddressKeys() {
+        int filled = capsuleRepository.fillMissingAddressKeys();
+        if (filled > 0) {
+            log.info("Filled in address keys for {} capsules", filled);
+        }
+    }
+
     @Override
-    @Transactional
     @Scheduled(cron = "${capsule.scheduler.cron}")
     public int processCapsulesDueForOpening() {
         log.info("Checking for capsules due for opening");
-        List<Capsule> readyCapsules = capsuleRepository.findCapsulesReadyToOpen(LocalDateTime.now());
-        
-        int count = 0;
-        for (Capsule capsule : readyCapsules) {
-            capsule.setStatus(Capsule.CapsuleStatus.READY_TO_OPEN);
-            capsuleRepository.save(capsule);
-            count++;
-        }
+        int count = dueCapsuleSweeper.sweep(LocalDateTime.now());
         
         log.info("Found {} capsules ready to be opened", count);
         return count;
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<CapsuleSummary> getPopularCapsules(int limit) {
+        return leaderboardService.getTopCapsules(LeaderboardService.Board.POPULAR, limit);
+    }
+
+    @Override
+    public List<CapsuleSummary> getFeaturedCapsules() {
+        return capsuleRepository.findFeaturedSummaries();
+    }
+
+    @Override
+    public List<CapsuleSummary> getRecentlyOpenedCapsules(int limit) {
+        return leaderboardService.getTopCapsules(LeaderboardService.Board.RECENTLY_OPENED, limit);
+    }
+
+    @Override
+    public List<CapsuleSummary> getMostSubscribedCapsules(int limit) {
+        return leaderboardService.getTopCapsules(LeaderboardService.Board.MOST_SUBSCRIBED, limit);
+    }
+
+    @Override
+    public Optional<Capsule> incrementViewCount(Long id) {
+        return increment(id, CapsuleCounters.Counter.VIEWS);
+    }
+
+    @Override
+    public Optional<Capsule> incrementShareCount(Long id) {
+        return increment(id, CapsuleCounters.Counter.SHARES);
+    }
+
+    @Override
+    public Optional<Capsule> subscribeToCapsule(Long capsuleId, String userAddress) {
+        log.info("Recording subscription of {} to capsule {}", userAddress, capsuleId);
+        return increment(capsuleId, CapsuleCounters.Counter.SUBSCRIPTIONS);
+    }
+
+    /**
+     * Counts the increment without writing the row, and returns the capsule
+     * with its counters including the increments not yet flushed.
+     */
+    private Optional<Capsule> increment(Long id, CapsuleCounters.Counter counter) {
+        return capsuleCache.getById(id).map(capsule -> {
+            capsuleCounters.increment(id, counter);
+            capsule.setViewCount(capsuleCounters.withPending(
+                    id, CapsuleCounters.Counter.VIEWS, capsule.getViewCount()));
+            capsule.setShareCount(capsuleCounters.withPending(
+                    id, CapsuleCounters.Counter.SHARES, capsule.getShareCount()));
+            capsule.setSubscriptionCount(capsuleCounters.withPending(
+                    id, CapsuleCounters.Counter.SUBSCRIPTIONS, capsule.getSubscriptionCount()));
+            return capsule;
+        });
+    }
+
+    /**
+     * Merges two streams ordered by id into one, dropping capsules that are in
+     * both. Closing the result closes both streams.
+     */
+    private static Stream<CapsuleSummary> mergeById(Stream<CapsuleSummary> first, Stream<CapsuleSummary> second) {
+        Iterator<CapsuleSummary> left = first.iterator();
+        Iterator<CapsuleSummary> right = second.iterator();
+        Iterator<CapsuleSummary> merged = new Iterator<>() {
+            private CapsuleSummary nextLeft = left.hasNext() ? left.next() : null;
+            private CapsuleSummary nextRight = right.hasNext() ? right.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextLeft != null || nextRight != null;
+            }
+
+            @Override
+            public CapsuleSummary next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                CapsuleSummary result;
+                if (nextRight == null || (nextLeft != null && nextLeft.id() <= nextRight.id())) {
+                    result = nextLeft;
+                    if (nextRight != null && nextRight.id().equals(nextLeft.id())) {
+                        nextRight = right.hasNext() ? right.next() : null;
+                    }
+                    nextLeft = left.hasNext() ? left.next() : null;
+                } else {
+                    result = nextRight;
+                    nextRight = right.hasNext() ? right.next() : null;
+                }
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try (first) {
+                        second.close();
+                    }
+                });
+    }
+}
@@ -0,0 +1,296 @@
+package io.aionios.service.impl;
+
+import io.ipfs.multihash.Multihash;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Content-addressed blob store that keeps its data off the Java heap.
+ * Content is split into fixed-size chunks, identical chunks are stored once
+ * (keyed by their SHA-256 digest) and chunk bytes live in memory-mapped
+ * segment files or direct buffers. Only the chunk index and the per-blob
+ * manifests are kept on-heap, so the heap stays flat as the store grows.
+ */
+@Slf4j
+public class ChunkStore implements Closeable {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final int chunkSize;
+    private final int segmentSize;
+    private final Path directory;
+
+    private final Map<String, ChunkRef> chunks = new ConcurrentHashMap<>();
+    private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+    private final ReentrantLock[] chunkLocks = new ReentrantLock[LOCK_STRIPES];
+
+    private final List<ByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final List<FileChannel> segmentChannels = new CopyOnWriteArrayList<>();
+    private final ReentrantLock allocationLock = new ReentrantLock();
+    private int allocationOffset;
+
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong logicalBytes = new AtomicLong();
+
+    /**
+     * @param chunkSize The size of each chunk in bytes
+     * @param segmentSize The size of each off-heap segment in bytes, at least one chunk
+     * @param directory The directory for memory-mapped segment files, or null to use direct buffers
+     */
+    public ChunkStore(int chunkSize, int segmentSize, Path directory) {
+        if (chunkSize <= 0 || segmentSize < chunkSize) {
+            throw new IllegalArgumentException("Segment size must be at least one chunk");
+        }
+        this.chunkSize = chunkSize;
+        this.segmentSize = segmentSize;
+        this.directory = directory;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            chunkLocks[i] = new ReentrantLock();
+        }
+        // Force the first write to allocate a segment
+        this.allocationOffset = segmentSize;
+    }
+
+    /**
+     * Stores content read from a stream. At most one chunk is buffered on-heap.
+     *
+     * @param content The stream to read; it is not closed
+     * @return The content hash (a base58 SHA-256 multihash)
+     */
+    public String put(InputStream content) throws IOException {
+        HashingInputStream hashing = new HashingInputStream(content);
+        MessageDigest chunkDigest = HashingInputStream.newSha256();
+        byte[] buffer = new byte[chunkSize];
+        List<ChunkRef> refs = new ArrayList<>();
+
+        int read;
+        while ((read = hashing.readNBytes(buffer, 0, chunkSize)) > 0) {
+            chunkDigest.update(buffer, 0, read);
+            refs.add(storeChunk(HexFormat.of().formatHex(chunkDigest.digest()), buffer, read));
+            if (read < chunkSize) {
+                break;
+            }
+        }
+
+        String hash = new Multihash(Multihash.Type.sha2_256, hashing.digest()).toBase58();
+        if (manifests.putIfAbsent(hash, new Manifest(hashing.getBytesRead(), refs.toArray(ChunkRef[]::new))) == null) {
+            logicalBytes.addAndGet(hashing.getBytesRead());
+        }
+        return hash;
+    }
+
+    public boolean contains(String hash) {
+        return manifests.containsKey(hash);
+    }
+
+    /**
+     * @return The size of the content in bytes, or -1 if it is not stored
+     */
+    public long size(String hash) {
+        Manifest manifest = manifests.get(hash);
+        return manifest != null ? manifest.size() : -1;
+    }
+
+    /**
+     * Opens a stream over a range of stored content. The data is read
+     * directly from the off-heap segments.
+     *
+     * @param hash The content hash
+     * @param offset The first byte to read
+     * @param length The number of bytes to read, or -1 to read to the end
+     */
+    public InputStream open(String hash, long offset, long length) throws IOException {
+        Manifest manifest = manifests.get(hash);
+        if (manifest == null) {
+            throw new FileNotFoundException("Content not found: " + hash);
+        }
+        if (offset < 0 || offset > manifest.size()) {
+            throw new IOException("Offset " + offset + " is outside content of " + manifest.size() + " bytes");
+        }
+        long end = length < 0 ? manifest.size() : Math.min(manifest.size(), offset + length);
+        return new ChunkInputStream(manifest.chunks(), offset, end);
+    }
+
+    public byte[] read(String hash) throws IOException {
+        long size = size(hash);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Content too large to read into memory: " + hash);
+        }
+        try (InputStream in = open(hash, 0, -1)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @return The number of distinct chunks held
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * @return The bytes held off-heap after deduplication
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * @return The total size of all distinct blobs before deduplication
+     */
+    public long getLogicalBytes() {
+        return logicalBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel channel : segmentChannels) {
+            channel.close();
+        }
+        segments.clear();
+        if (directory != null) {
+            for (int i = 0; i < segmentChannels.size(); i++) {
+                Files.deleteIfExists(segmentPath(i));
+            }
+        }
+        segmentChannels.clear();
+    }
+
+    private ChunkRef storeChunk(String digest, byte[] data, int length) throws IOException {
+        ChunkRef existing = chunks.get(digest);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Striped on the digest so that concurrent writers of the same chunk
+        // store it once, while unrelated chunks are written in parallel
+        ReentrantLock lock = chunkLocks[Math.floorMod(digest.hashCode(), LOCK_STRIPES)];
+        lock.lock();
+        try {
+            existing = chunks.get(digest);
+            if (existing != null) {
+                return existing;
+            }
+            ChunkRef ref = allocate(length);
+            ByteBuffer target = segments.get(ref.segment()).duplicate();
+            target.position(ref.offset());
+            target.put(data, 0, length);
+            chunks.put(digest, ref);
+            storedBytes.addAndGet(length);
+            return ref;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ChunkRef allocate(int length) throws IOException {
+        allocationLock.lock();
+        try {
+            if (allocationOffset + length > segmentSize) {
+                segments.add(newSegment(segments.size()));
+                allocationOffset = 0;
+            }
+            ChunkRef ref = new ChunkRef(segments.size() - 1, allocationOffset, length);
+            allocationOffset += length;
+            return ref;
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+
+    private ByteBuffer newSegment(int index) throws IOException {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(segmentSize);
+        }
+        FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentChannels.add(channel);
+        log.debug("Mapped chunk store segment {} ({} bytes)", index, segmentSize);
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("segment-%05d.dat", index));
+    }
+
+    private record ChunkRef(int segment, int offset, int length) {
+    }
+
+    private record Manifest(long size, ChunkRef[] chunks) {
+    }
+
+    /**
+     * Reads a byte range across the chunks of one blob without copying the
+     * blob onto the heap.
+     */
+    private class ChunkInputStream extends InputStream {
+
+        private final ChunkRef[] refs;
+        private final long end;
+        private long position;
+        private int chunkIndex;
+        private int chunkStart;
+
+        ChunkInputStream(ChunkRef[] refs, long offset, long end) {
+            this.refs = refs;
+            this.end = end;
+            this.position = offset;
+            // Chunks are fixed-size except the last one, so the start chunk is a division
+            this.chunkIndex = (int) (offset / chunkSize);
+            this.chunkStart = chunkIndex * chunkSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            ChunkRef ref = refs[chunkIndex];
+            int inChunk = (int) (position - chunkStart);
+            int n = (int) Math.min(Math.min(len, ref.length() - inChunk), end - position);
+
+            ByteBuffer source = segments.get(ref.segment()).duplicate();
+            source.position(ref.offset() + inChunk);
+            source.get(b, off, n);
+
+            position += n;
+            if (inChunk + n == ref.length()) {
+                chunkIndex++;
+                chunkStart += ref.length();
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
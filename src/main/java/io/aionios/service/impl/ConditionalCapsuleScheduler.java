@@ -0,0 +1,189 @@
+package io.aionios.service.impl;
+
+import io.aionios.condition.Condition;
+import io.aionios.condition.ConditionEngine;
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.event.SchedulerShardsChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.oracle.OracleService;
+import io.aionios.repository.CapsuleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves sealed MULTISIG, ORACLE and COMPOUND capsules to READY_TO_OPEN once
+ * their condition is met. Capsules are walked in id order, one page at a time,
+ * and every page is evaluated as a batch with the {@link ConditionEngine}, so
+ * conditions are compiled once and oracle feeds are read once per round.
+ * Capsules still waiting on an oracle feed are handed to the
+ * {@link OracleService}, which opens them as soon as an update meets their
+ * condition.
+ * <p>
+ * After a full scan of the owned shards, on start and whenever they change,
+ * a round only looks at rows added since the previous rounds and at MULTISIG
+ * and COMPOUND capsules, whose signer approvals and time parts have no
+ * trigger of their own. ORACLE capsules are left to the oracle index.
+ */
+@Component
+@Slf4j
+public class ConditionalCapsuleScheduler {
+
+    private static final Set<Capsule.ConditionType> PERIODIC_TYPES =
+            EnumSet.of(Capsule.ConditionType.MULTISIG, Capsule.ConditionType.COMPOUND);
+
+    private final CapsuleRepository capsuleRepository;
+    private final SchedulerShards schedulerShards;
+    private final ConditionEngine conditionEngine;
+    private final OracleService oracleService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int pageSize;
+
+    private final AtomicBoolean rescan = new AtomicBoolean(true);
+    // Rows above the checkpoint are new to a round. It trails the rows seen by
+    // one round, so that a row committed after a higher id is still picked up
+    private long checkpointId;
+    private long seenId;
+
+    public ConditionalCapsuleScheduler(
+            CapsuleRepository capsuleRepository,
+            SchedulerShards schedulerShards,
+            ConditionEngine conditionEngine,
+            OracleService oracleService,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${capsule.conditions.enabled:true}") boolean enabled,
+            @Value("${capsule.conditions.page-size:1000}") int pageSize) {
+        this.capsuleRepository = capsuleRepository;
+        this.schedulerShards = schedulerShards;
+        this.conditionEngine = conditionEngine;
+        this.oracleService = oracleService;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+    }
+
+    @Scheduled(fixedDelayString = "${capsule.conditions.interval-ms:10000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            evaluate();
+        } catch (Exception e) {
+            log.error("Failed to evaluate capsule conditions", e);
+        }
+    }
+
+    @EventListener
+    public void onShardsChanged(SchedulerShardsChangedEvent event) {
+        rescan.set(true);
+    }
+
+    /**
+     * Evaluates the conditions of the sealed conditional capsules this
+     * instance owns that a round looks at
+     *
+     * @return The number of capsules marked ready to open
+     */
+    public synchronized int evaluate() {
+        Set<Integer> shards = schedulerShards.getOwnedShards();
+        ConditionEngine.Round round = conditionEngine.newRound();
+        boolean full = rescan.getAndSet(false);
+        long from = full ? 0L : checkpointId;
+        // Read first, so a capsule sealed during the round is not skipped
+        Long lowestPending = capsuleRepository.findLowestIdWithStatus(Capsule.CapsuleStatus.PENDING);
+
+        int total = 0;
+        long lastId = from;
+        Long afterId = from;
+        while (true) {
+            List<CapsuleRepository.ConditionalCapsule> page =
+                    schedulerShards.findConditionalCapsulesAfter(shards, afterId, pageSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            total += evaluate(page, round, true);
+            afterId = page.get(page.size() - 1).getId();
+            lastId = afterId;
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+
+        if (!full) {
+            afterId = 0L;
+            while (true) {
+                List<CapsuleRepository.ConditionalCapsule> page =
+                        schedulerShards.findConditionalCapsulesAfter(shards, PERIODIC_TYPES, afterId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                total += evaluate(page, round, false);
+                afterId = page.get(page.size() - 1).getId();
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+        }
+
+        // PENDING capsules are sealed later under the ids they already have, by
+        // the outbox or in bulk by the chain indexer, so stay below the lowest
+        long next = full ? 0L : Math.max(checkpointId, seenId);
+        if (lowestPending != null) {
+            next = Math.min(next, lowestPending - 1);
+        }
+        checkpointId = next;
+        seenId = lastId;
+
+        if (total > 0) {
+            log.info("Marked {} conditional capsules ready to open", total);
+        }
+        return total;
+    }
+
+    /**
+     * Evaluates one page, handing the capsules still waiting on an oracle
+     * feed to the {@link OracleService} if asked to
+     *
+     * @return The number of capsules marked ready to open
+     */
+    private int evaluate(List<CapsuleRepository.ConditionalCapsule> page, ConditionEngine.Round round, boolean track) {
+        Map<Long, Condition> conditions = new LinkedHashMap<>();
+        for (CapsuleRepository.ConditionalCapsule capsule : page) {
+            try {
+                conditions.put(capsule.getId(), conditionEngine.compile(
+                        capsule.getId(), capsule.getConditionType(), capsule.getConditionData(), capsule.getOpenDate()));
+            } catch (IllegalArgumentException e) {
+                // Conditions are validated on creation, so only rows written by other means end up here
+                log.debug("Capsule {} has an invalid condition: {}", capsule.getId(), e.getMessage());
+            }
+        }
+
+        int marked = 0;
+        List<Long> met = conditionEngine.evaluate(conditions, round);
+        if (!met.isEmpty()) {
+            List<Long> updated = capsuleRepository.markSealedReadyToOpen(met);
+            if (!updated.isEmpty()) {
+                eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(Capsule.CapsuleStatus.READY_TO_OPEN, updated));
+            }
+            marked = updated.size();
+        }
+        if (track) {
+            // The rest wait for oracle updates, which open them between rounds
+            met.forEach(conditions::remove);
+            conditions.forEach(oracleService::track);
+        }
+        return marked;
+    }
+}
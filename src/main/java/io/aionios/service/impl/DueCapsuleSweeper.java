@@ -0,0 +1,131 @@
+package io.aionios.service.impl;
+
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.model.JobCheckpoint;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.repository.JobCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves due TIME capsules from SEALED to READY_TO_OPEN. The due capsules are
+ * walked in (openDate, id) order one page at a time, and each page is
+ * updated with a single bulk statement committed together with a checkpoint,
+ * so a sweep never holds more than one page in memory or in a transaction
+ * and continues from the checkpoint if it was interrupted.
+ * <p>
+ * When scheduling is clustered, a sweep only walks the shards this instance
+ * owns and keeps a checkpoint per shard, so an instance taking a shard over
+ * resumes where its previous owner stopped.
+ */
+@Component
+@Slf4j
+public class DueCapsuleSweeper {
+
+    static final String CHECKPOINT = "due-capsule-sweep";
+
+    private static final LocalDateTime START = LocalDateTime.of(1, 1, 1, 0, 0);
+
+    private final CapsuleRepository capsuleRepository;
+    private final JobCheckpointRepository checkpointRepository;
+    private final SchedulerShards schedulerShards;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+
+    public DueCapsuleSweeper(
+            CapsuleRepository capsuleRepository,
+            JobCheckpointRepository checkpointRepository,
+            SchedulerShards schedulerShards,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${capsule.scheduler.chunk-size:500}") int chunkSize) {
+        this.capsuleRepository = capsuleRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.schedulerShards = schedulerShards;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Marks all TIME capsules due by the given time as ready to open
+     *
+     * @param now The time capsules must be due by
+     * @return The number of capsules updated
+     */
+    public int sweep(LocalDateTime now) {
+        Set<Integer> shards = schedulerShards.getOwnedShards();
+        List<String> checkpoints = schedulerShards.isClustered()
+                ? shards.stream().map(shard -> CHECKPOINT + "-" + shard).toList()
+                : List.of(CHECKPOINT);
+        if (checkpoints.isEmpty()) {
+            return 0;
+        }
+
+        // Resume from the earliest position among the shards; one without a checkpoint starts over
+        LocalDateTime afterOpenDate = null;
+        Long afterId = null;
+        for (String name : checkpoints) {
+            JobCheckpoint checkpoint = checkpointRepository.findById(name).orElse(null);
+            if (checkpoint == null) {
+                afterOpenDate = START;
+                afterId = 0L;
+                break;
+            }
+            if (afterOpenDate == null || checkpoint.getPositionTime().isBefore(afterOpenDate)
+                    || (checkpoint.getPositionTime().equals(afterOpenDate) && checkpoint.getPositionId() < afterId)) {
+                afterOpenDate = checkpoint.getPositionTime();
+                afterId = checkpoint.getPositionId();
+            }
+        }
+        if (!START.equals(afterOpenDate)) {
+            log.info("Resuming capsule sweep after capsule {} due {}", afterId, afterOpenDate);
+        }
+
+        int total = 0;
+        while (true) {
+            List<CapsuleRepository.DueCapsule> page = schedulerShards.findDueCapsulesAfter(
+                    shards, now, afterOpenDate, afterId, chunkSize);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            CapsuleRepository.DueCapsule last = page.get(page.size() - 1);
+            List<Long> ids = page.stream().map(CapsuleRepository.DueCapsule::getId).toList();
+            List<Long> updated = transactionTemplate.execute(status -> {
+                List<Long> changed = capsuleRepository.markSealedReadyToOpen(ids);
+                checkpointRepository.saveAll(checkpoints.stream()
+                        .map(name -> JobCheckpoint.builder()
+                                .name(name)
+                                .positionTime(last.getOpenDate())
+                                .positionId(last.getId())
+                                .build())
+                        .toList());
+                return changed;
+            });
+            if (updated != null && !updated.isEmpty()) {
+                total += updated.size();
+                eventPublisher.publishEvent(CapsuleStatusChangedEvent.of(Capsule.CapsuleStatus.READY_TO_OPEN, updated));
+            }
+
+            afterOpenDate = last.getOpenDate();
+            afterId = last.getId();
+            if (page.size() < chunkSize) {
+                break;
+            }
+        }
+
+        // The sweep is complete, so the next one starts from the beginning
+        checkpointRepository.deleteAllById(checkpoints);
+        return total;
+    }
+}
@@ -1,41 +1,99 @@
 package io.aionios.service.impl;
 
+import io.aionios.cache.WeightedLruCache;
 import io.aionios.service.IPFSService;
 import io.ipfs.api.IPFS;
 import io.ipfs.api.MerkleNode;
 import io.ipfs.api.NamedStreamable;
 import io.ipfs.multihash.Multihash;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import org.springframework.web.multipart.MultipartFile;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Real implementation of IPFSService that connects to an actual IPFS node.
- * Currently disabled in favor of the mock implementation.
+ * Active when ipfs.implementation is "node".
  */
+@Service
+@Qualifier("ipfsDelegate")
+@ConditionalOnProperty(name = "ipfs.implementation", havingValue = "node")
 @Slf4j
 public class IPFSServiceImpl implements IPFSService {
 
     private final IPFS ipfs;
+    private final String apiUrl;
+
+    // Existence lookups are cached as hash -> expiry time in millis. Positive
+    // answers live long since content is immutable; negative ones expire
+    // quickly because the content may still be added or found later
+    private final WeightedLruCache<String, Long> knownPresent;
+    private final WeightedLruCache<String, Long> knownMissing;
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+    private final int existsTimeoutMillis;
+    private final int connectTimeoutMillis;
+    private final ExecutorService existsExecutor;
 
     public IPFSServiceImpl(
             @Value("${ipfs.node.host}") String ipfsHost,
-            @Value("${ipfs.node.port}") int ipfsPort) {
+            @Value("${ipfs.node.port}") int ipfsPort,
+            @Value("${ipfs.node.connect-timeout-ms:2000}") int connectTimeoutMillis,
+            @Value("${ipfs.exists.cache-size:100000}") long existsCacheSize,
+            @Value("${ipfs.exists.positive-ttl-ms:3600000}") long positiveTtlMillis,
+            @Value("${ipfs.exists.negative-ttl-ms:30000}") long negativeTtlMillis,
+            @Value("${ipfs.exists.timeout-ms:5000}") int existsTimeoutMillis,
+            @Value("${ipfs.exists.parallelism:8}") int existsParallelism) {
         this.ipfs = new IPFS(ipfsHost, ipfsPort);
+        this.apiUrl = "http://" + ipfsHost + ":" + ipfsPort + "/api/v0/";
+        this.knownPresent = new WeightedLruCache<>(existsCacheSize, expiry -> 1);
+        this.knownMissing = new WeightedLruCache<>(existsCacheSize, expiry -> 1);
+        this.positiveTtlMillis = positiveTtlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.existsTimeoutMillis = existsTimeoutMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.existsExecutor = Executors.newFixedThreadPool(existsParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "ipfs-exists");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
-    public String uploadContent(MultipartFile file) throws IOException {
+    public String uploadContent(String fileName, InputStream content, long sizeHint) throws IOException {
+        HashingInputStream hashing = new HashingInputStream(content);
         try {
-            // Convert MultipartFile to NamedStreamable.InputStreamWrapper
-            NamedStreamable.InputStreamWrapper is = new NamedStreamable.InputStreamWrapper(
-                    file.getOriginalFilename(), file.getInputStream());
+            // The IPFS client writes the multipart body in small chunks, so the
+            // content is never held in memory as a whole
+            NamedStreamable.InputStreamWrapper is = fileName != null
+                    ? new NamedStreamable.InputStreamWrapper(fileName, hashing)
+                    : new NamedStreamable.InputStreamWrapper(hashing);
 
             // Add the file to IPFS
             MerkleNode response = ipfs.add(is).get(0);
-            log.info("Successfully uploaded content to IPFS: {}", response.hash);
+            if (sizeHint >= 0 && hashing.getBytesRead() != sizeHint) {
+                log.warn("Uploaded {} bytes to IPFS but {} were expected", hashing.getBytesRead(), sizeHint);
+            }
+            log.info("Successfully uploaded content to IPFS: {} ({} bytes, sha256 {})",
+                    response.hash, hashing.getBytesRead(), hashing.hexDigest());
             
             return response.hash.toString();
         } catch (IOException e) {
@@ -59,14 +117,143 @@ public class IPFSServiceImpl implements IPFSService {
     }
 
     @Override
-    public boolean contentExists(String ipfsHash) {
+    public long getContentSize(String ipfsHash) throws IOException {
         try {
-            Multihash filePointer = Multihash.fromBase58(ipfsHash);
-            ipfs.cat(filePointer);
+            // files/stat reads the root node only and reports the file size,
+            // unlike object/stat which includes the DAG overhead
+            Map<?, ?> stat = ipfs.files.stat("/ipfs/" + ipfsHash);
+            Object size = stat.get("Size");
+            if (!(size instanceof Number)) {
+                throw new IOException("IPFS did not report a size for " + ipfsHash);
+            }
+            return ((Number) size).longValue();
+        } catch (IOException | RuntimeException e) {
+            // The client reports the node's error message, but not its status
+            if (isNotFound(0, String.valueOf(e.getMessage()))) {
+                throw new FileNotFoundException("Content not found: " + ipfsHash);
+            }
+            log.error("Error getting content size from IPFS", e);
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream openContent(String ipfsHash, long offset, long length) throws IOException {
+        // The client library cannot pass offset/length to cat, so call the
+        // HTTP API directly and hand back the response stream unbuffered
+        HttpURLConnection connection = openApiConnection("cat?arg=" + encode(ipfsHash) + "&offset=" + offset
+                + (length >= 0 ? "&length=" + length : ""), 0);
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            String error = readError(connection);
+            connection.disconnect();
+            if (isNotFound(status, error)) {
+                throw new FileNotFoundException("Content not found: " + ipfsHash);
+            }
+            log.error("Error streaming {} from IPFS: HTTP {} {}", ipfsHash, status, error);
+            throw new IOException("IPFS cat failed with HTTP " + status);
+        }
+        return connection.getInputStream();
+    }
+
+    @Override
+    public boolean contentExists(String ipfsHash) {
+        long now = System.currentTimeMillis();
+        Long expiry = knownPresent.get(ipfsHash);
+        if (expiry != null && expiry > now) {
             return true;
-        } catch (Exception e) {
-            log.warn("Content does not exist in IPFS: {}", ipfsHash);
+        }
+        expiry = knownMissing.get(ipfsHash);
+        if (expiry != null && expiry > now) {
+            return false;
+        }
+
+        // block/stat only reads the root block's metadata instead of
+        // downloading the content, and the node gives up after the timeout
+        try {
+            HttpURLConnection connection = openApiConnection("block/stat?arg=" + encode(ipfsHash)
+                    + "&timeout=" + existsTimeoutMillis + "ms", existsTimeoutMillis * 2);
+            int status = connection.getResponseCode();
+            String error = status == HttpURLConnection.HTTP_OK ? null : readError(connection);
+            connection.disconnect();
+
+            if (status == HttpURLConnection.HTTP_OK) {
+                knownPresent.put(ipfsHash, now + positiveTtlMillis);
+                knownMissing.remove(ipfsHash);
+                return true;
+            }
+            if (isNotFound(status, error)) {
+                knownMissing.put(ipfsHash, now + negativeTtlMillis);
+                log.warn("Content does not exist in IPFS: {}", ipfsHash);
+            } else {
+                // Any other error says nothing about the content either, so it is not cached
+                log.warn("Could not check whether content exists in IPFS: {}: HTTP {} {}", ipfsHash, status, error);
+            }
+            return false;
+        } catch (IOException e) {
+            // The node could not be asked, which says nothing about the content, so don't cache it
+            log.warn("Could not check whether content exists in IPFS: {}", ipfsHash, e);
             return false;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<String, Boolean> contentExists(Collection<String> ipfsHashes) {
+        Map<String, Future<Boolean>> lookups = new LinkedHashMap<>();
+        for (String ipfsHash : ipfsHashes) {
+            lookups.computeIfAbsent(ipfsHash, hash -> existsExecutor.submit(() -> contentExists(hash)));
+        }
+
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Boolean>> lookup : lookups.entrySet()) {
+            try {
+                result.put(lookup.getKey(), lookup.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lookups.values().forEach(future -> future.cancel(true));
+                throw new IllegalStateException("Interrupted while checking content on IPFS", e);
+            } catch (ExecutionException e) {
+                result.put(lookup.getKey(), false);
+            }
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void close() {
+        existsExecutor.shutdownNow();
+    }
+
+    private HttpURLConnection openApiConnection(String query, int readTimeoutMillis) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(apiUrl + query).toURL().openConnection();
+        connection.setRequestMethod("POST");
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        return connection;
+    }
+
+    /**
+     * @return Whether the node answered that it has no such content, or could
+     *         not find it before the lookup timed out
+     */
+    private static boolean isNotFound(int status, String error) {
+        if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+            return true;
+        }
+        String message = error.toLowerCase(Locale.ROOT);
+        return message.contains("not found") || message.contains("deadline exceeded") || message.contains("timeout");
+    }
+
+    // The node reports errors as a short JSON message in the response body
+    private static String readError(HttpURLConnection connection) {
+        try (InputStream in = connection.getErrorStream()) {
+            return in == null ? "" : new String(in.readNBytes(4096), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
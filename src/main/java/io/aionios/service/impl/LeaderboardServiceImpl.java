@@ -0,0 +1,180 @@
+package io.aionios.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.aionios.cache.Leaderboard;
+import io.aionios.dto.CapsuleSummary;
+import io.aionios.event.CapsuleCountersFlushedEvent;
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.service.LeaderboardService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Explore leaderboards kept in memory. Each board is loaded from the
+ * database at startup and on a slow refresh, and is otherwise maintained
+ * incrementally from status changes and counter flushes, so explore requests
+ * never query the database. Boards hold capsule summaries and keep twice
+ * the number of capsules served, so capsules leaving a board are usually
+ * backfilled without a reload.
+ */
+@Service
+@Slf4j
+public class LeaderboardServiceImpl implements LeaderboardService {
+
+    private final CapsuleRepository capsuleRepository;
+    private final CapsuleCounters capsuleCounters;
+    private final ObjectMapper objectMapper;
+    private final int size;
+
+    private final Map<Board, Leaderboard<CapsuleSummary>> boards = new EnumMap<>(Board.class);
+    private final Map<Board, Map<Integer, Rendered>> rendered = new EnumMap<>(Board.class);
+
+    public LeaderboardServiceImpl(
+            CapsuleRepository capsuleRepository,
+            CapsuleCounters capsuleCounters,
+            ObjectMapper objectMapper,
+            @Value("${capsule.leaderboard.size:100}") int size) {
+        this.capsuleRepository = capsuleRepository;
+        this.capsuleCounters = capsuleCounters;
+        this.objectMapper = objectMapper;
+        this.size = size;
+        for (Board board : Board.values()) {
+            boards.put(board, new Leaderboard<>(size * 2));
+            rendered.put(board, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public List<CapsuleSummary> getTopCapsules(Board board, int limit) {
+        List<CapsuleSummary> ranked = boards.get(board).snapshot().values();
+        return ranked.subList(0, Math.min(ranked.size(), clamp(limit)));
+    }
+
+    @Override
+    public byte[] getTopCapsulesJson(Board board, int limit) {
+        int clamped = clamp(limit);
+        Leaderboard.Snapshot<CapsuleSummary> snapshot = boards.get(board).snapshot();
+        Rendered cached = rendered.get(board).get(clamped);
+        if (cached != null && cached.version() == snapshot.version()) {
+            return cached.json();
+        }
+
+        List<CapsuleSummary> ranked = snapshot.values();
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(ranked.subList(0, Math.min(ranked.size(), clamped)));
+            rendered.get(board).put(clamped, new Rendered(snapshot.version(), json));
+            return json;
+        } catch (JsonProcessingException e) {
+            log.error("Failed to render {} leaderboard", board, e);
+            throw new RuntimeException("Failed to render leaderboard", e);
+        }
+    }
+
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${capsule.leaderboard.refresh-interval-ms:300000}",
+            fixedDelayString = "${capsule.leaderboard.refresh-interval-ms:300000}")
+    public void rebuild() {
+        PageRequest top = PageRequest.of(0, size * 2);
+        reset(Board.POPULAR, capsuleRepository.findPopularSummaries(top));
+        reset(Board.MOST_SUBSCRIBED, capsuleRepository.findMostSubscribedSummaries(top));
+        reset(Board.RECENTLY_OPENED, capsuleRepository.findRecentlyOpenedSummaries(top));
+        log.info("Explore leaderboards reloaded");
+    }
+
+    // Runs after commit, so a rolled back transition never reaches a board
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCapsuleStatusChanged(CapsuleStatusChangedEvent event) {
+        if (!event.capsules().isEmpty()) {
+            event.capsules().forEach(capsule -> apply(CapsuleSummary.of(capsule)));
+        } else if (event.status() == Capsule.CapsuleStatus.SEALED || event.status() == Capsule.CapsuleStatus.OPENED) {
+            capsuleRepository.findSummariesByIds(event.capsuleIds()).forEach(this::apply);
+        } else {
+            // Capsules in any other status are on none of the boards
+            for (Long id : event.capsuleIds()) {
+                boards.values().forEach(board -> board.remove(id));
+            }
+        }
+    }
+
+    @EventListener
+    public void onCountersFlushed(CapsuleCountersFlushedEvent event) {
+        // One query per flush rather than per increment
+        capsuleRepository.findSummariesByIds(event.capsuleIds()).forEach(this::apply);
+    }
+
+    private void apply(CapsuleSummary capsule) {
+        CapsuleSummary snapshot = withPending(capsule);
+        Capsule.CapsuleStatus status = capsule.status();
+
+        if (status == Capsule.CapsuleStatus.SEALED || status == Capsule.CapsuleStatus.OPENED) {
+            boards.get(Board.POPULAR).update(capsule.id(), snapshot.viewCount(), snapshot);
+        } else {
+            boards.get(Board.POPULAR).remove(capsule.id());
+        }
+
+        if (status == Capsule.CapsuleStatus.SEALED) {
+            boards.get(Board.MOST_SUBSCRIBED).update(capsule.id(), snapshot.subscriptionCount(), snapshot);
+        } else {
+            boards.get(Board.MOST_SUBSCRIBED).remove(capsule.id());
+        }
+
+        if (status == Capsule.CapsuleStatus.OPENED && capsule.openedAt() != null) {
+            boards.get(Board.RECENTLY_OPENED).update(capsule.id(), openedAtMillis(capsule), snapshot);
+        } else {
+            boards.get(Board.RECENTLY_OPENED).remove(capsule.id());
+        }
+    }
+
+    private void reset(Board board, Collection<CapsuleSummary> capsules) {
+        Map<Long, Long> scores = new LinkedHashMap<>();
+        Map<Long, CapsuleSummary> values = new LinkedHashMap<>();
+        for (CapsuleSummary capsule : capsules) {
+            CapsuleSummary snapshot = withPending(capsule);
+            values.put(capsule.id(), snapshot);
+            scores.put(capsule.id(), switch (board) {
+                case POPULAR -> (long) snapshot.viewCount();
+                case MOST_SUBSCRIBED -> (long) snapshot.subscriptionCount();
+                case RECENTLY_OPENED -> openedAtMillis(capsule);
+            });
+        }
+        boards.get(board).reset(scores, values);
+    }
+
+    private CapsuleSummary withPending(CapsuleSummary capsule) {
+        return capsule.withCounts(
+                capsuleCounters.withPending(capsule.id(), CapsuleCounters.Counter.VIEWS, capsule.viewCount()),
+                capsuleCounters.withPending(capsule.id(), CapsuleCounters.Counter.SHARES, capsule.shareCount()),
+                capsuleCounters.withPending(capsule.id(), CapsuleCounters.Counter.SUBSCRIPTIONS, capsule.subscriptionCount()));
+    }
+
+    private int clamp(int limit) {
+        return Math.max(0, Math.min(limit, size));
+    }
+
+    private static long openedAtMillis(CapsuleSummary capsule) {
+        return capsule.openedAt() != null
+                ? capsule.openedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : 0;
+    }
+
+    private record Rendered(long version, byte[] json) {
+    }
+}
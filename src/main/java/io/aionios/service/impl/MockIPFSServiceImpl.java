@@ -1,32 +1,52 @@
 package io.aionios.service.impl;
 
 import io.aionios.service.IPFSService;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+/**
+ * IPFS stand-in for development and load tests. Content is kept in a
+ * content-addressed, deduplicating {@link ChunkStore} outside the heap.
+ * Active unless ipfs.implementation selects another implementation.
+ */
 @Service
-@Primary
+@Qualifier("ipfsDelegate")
+@ConditionalOnProperty(name = "ipfs.implementation", havingValue = "mock", matchIfMissing = true)
 @Slf4j
 public class MockIPFSServiceImpl implements IPFSService {
 
-    private final Map<String, byte[]> contentStore = new HashMap<>();
+    private final ChunkStore contentStore;
+
+    public MockIPFSServiceImpl(
+            @Value("${ipfs.mock.chunk-size:262144}") int chunkSize,
+            @Value("${ipfs.mock.segment-size:67108864}") int segmentSize,
+            @Value("${ipfs.mock.memory-mapped:true}") boolean memoryMapped,
+            @Value("${ipfs.mock.store-directory:}") String storeDirectory) throws IOException {
+        Path directory = null;
+        if (memoryMapped) {
+            directory = storeDirectory.isBlank()
+                    ? Files.createTempDirectory("aionios-ipfs")
+                    : Files.createDirectories(Path.of(storeDirectory));
+        }
+        this.contentStore = new ChunkStore(chunkSize, segmentSize, directory);
+        log.info("Mock IPFS: Chunk store initialized in {}", directory != null ? directory : "direct buffers");
+    }
 
     @Override
-    public String uploadContent(MultipartFile file) throws IOException {
+    public String uploadContent(String fileName, InputStream content, long sizeHint) throws IOException {
         try {
-            // Generate a mock IPFS hash
-            String hash = "Qm" + UUID.randomUUID().toString().replace("-", "");
-            
-            // Store the content in memory
-            contentStore.put(hash, file.getBytes());
-            
+            String hash = contentStore.put(content);
+
             log.info("Mock IPFS: Uploaded content with hash {}", hash);
             return hash;
         } catch (IOException e) {
@@ -37,19 +57,41 @@ public class MockIPFSServiceImpl implements IPFSService {
 
     @Override
     public byte[] getContent(String ipfsHash) throws IOException {
-        if (!contentStore.containsKey(ipfsHash)) {
+        if (!contentStore.contains(ipfsHash)) {
             log.error("Content not found in mock IPFS: {}", ipfsHash);
-            throw new IOException("Content not found");
+            throw new FileNotFoundException("Content not found: " + ipfsHash);
         }
-        
+
         log.info("Mock IPFS: Retrieved content with hash {}", ipfsHash);
-        return contentStore.get(ipfsHash);
+        return contentStore.read(ipfsHash);
+    }
+
+    @Override
+    public long getContentSize(String ipfsHash) throws IOException {
+        long size = contentStore.size(ipfsHash);
+        if (size < 0) {
+            throw new FileNotFoundException("Content not found: " + ipfsHash);
+        }
+        return size;
+    }
+
+    @Override
+    public InputStream openContent(String ipfsHash, long offset, long length) throws IOException {
+        log.info("Mock IPFS: Streaming content with hash {} from offset {}", ipfsHash, offset);
+        return contentStore.open(ipfsHash, offset, length);
     }
 
     @Override
     public boolean contentExists(String ipfsHash) {
-        boolean exists = contentStore.containsKey(ipfsHash);
+        boolean exists = contentStore.contains(ipfsHash);
         log.info("Mock IPFS: Checking if content exists: {} - {}", ipfsHash, exists);
         return exists;
     }
+
+    @PreDestroy
+    public void close() throws IOException {
+        log.info("Mock IPFS: Closing chunk store ({} chunks, {} bytes stored for {} bytes of content)",
+                contentStore.getChunkCount(), contentStore.getStoredBytes(), contentStore.getLogicalBytes());
+        contentStore.close();
+    }
 }
@@ -0,0 +1,301 @@
+package io.aionios.service.impl;
+
+import io.aionios.config.ExecutionMode;
+import io.aionios.event.SchedulerShardsChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.model.SchedulerLease;
+import io.aionios.model.SchedulerNode;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.repository.SchedulerLeaseRepository;
+import io.aionios.repository.SchedulerNodeRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the due capsules between scheduler instances. Capsules are divided
+ * into {@code shard-count} shards by id, and each instance leases an even
+ * share of the shards in the {@code scheduler_leases} table. Every heartbeat
+ * renews the instance's leases, counts the live instances and claims or
+ * releases shards to match its share, so the shards of an instance that
+ * stopped are taken over once its leases expire.
+ * <p>
+ * The heartbeat runs on its own thread, so slow scheduled jobs can't hold up
+ * the renewal, and lease times are taken from the database clock, so the
+ * instances' own clocks don't need to agree.
+ * <p>
+ * Leases partition the work rather than guard it: the status transitions
+ * are conditional, so a capsule opened twice during a handover is harmless.
+ * With clustering off, this instance owns every capsule.
+ */
+@Component
+@Slf4j
+public class SchedulerShards {
+
+    private final CapsuleRepository capsuleRepository;
+    private final SchedulerLeaseRepository leaseRepository;
+    private final SchedulerNodeRepository nodeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean clustered;
+    private final int shardCount;
+    private final long heartbeatMillis;
+    private final long leaseMillis;
+    private final String nodeId;
+    private final ScheduledExecutorService heartbeats;
+
+    private volatile Set<Integer> owned = Set.of();
+
+    public SchedulerShards(
+            CapsuleRepository capsuleRepository,
+            SchedulerLeaseRepository leaseRepository,
+            SchedulerNodeRepository nodeRepository,
+            ApplicationEventPublisher eventPublisher,
+            JdbcTemplate jdbcTemplate,
+            ExecutionMode executionMode,
+            @Value("${capsule.scheduler.cluster.enabled:false}") boolean clustered,
+            @Value("${capsule.scheduler.cluster.shard-count:16}") int shardCount,
+            @Value("${capsule.scheduler.cluster.heartbeat-ms:5000}") long heartbeatMillis,
+            @Value("${capsule.scheduler.cluster.lease-ms:30000}") long leaseMillis,
+            @Value("${capsule.scheduler.cluster.node-id:}") String nodeId) {
+        this.capsuleRepository = capsuleRepository;
+        this.leaseRepository = leaseRepository;
+        this.nodeRepository = nodeRepository;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clustered = clustered;
+        this.shardCount = shardCount;
+        this.heartbeatMillis = heartbeatMillis;
+        this.leaseMillis = leaseMillis;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(executionMode.threadFactory("scheduler-heartbeat"));
+    }
+
+    /**
+     * @return Whether capsules are split between instances; if not, this instance owns them all
+     */
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return The shards this instance owns, in ascending order
+     */
+    public Set<Integer> getOwnedShards() {
+        return owned;
+    }
+
+    public boolean owns(Long capsuleId) {
+        return !clustered || owned.contains((int) Math.floorMod(capsuleId, (long) shardCount));
+    }
+
+    /**
+     * Next page of due TIME capsules after the (openDate, id) keyset position,
+     * limited to the given shards unless clustering is off
+     *
+     * @param shards The shards to look in, usually {@link #getOwnedShards()}
+     */
+    public List<CapsuleRepository.DueCapsule> findDueCapsulesAfter(
+            Set<Integer> shards, LocalDateTime until, LocalDateTime afterOpenDate, Long afterId, int pageSize) {
+        if (!clustered) {
+            return capsuleRepository.findDueCapsulesAfter(until, afterOpenDate, afterId, PageRequest.of(0, pageSize));
+        }
+        if (shards.isEmpty()) {
+            return List.of();
+        }
+        List<Long> shardKeys = shards.stream().map(Long::valueOf).toList();
+        return capsuleRepository.findDueCapsulesInShardsAfter(
+                until, afterOpenDate, afterId, (long) shardCount, shardKeys, PageRequest.of(0, pageSize));
+    }
+
+    /**
+     * Next page of sealed capsules with a non-TIME condition after the given
+     * id, limited to the given shards unless clustering is off
+     */
+    public List<CapsuleRepository.ConditionalCapsule> findConditionalCapsulesAfter(
+            Set<Integer> shards, Long afterId, int pageSize) {
+        if (!clustered) {
+            return capsuleRepository.findConditionalCapsulesAfter(afterId, PageRequest.of(0, pageSize));
+        }
+        if (shards.isEmpty()) {
+            return List.of();
+        }
+        List<Long> shardKeys = shards.stream().map(Long::valueOf).toList();
+        return capsuleRepository.findConditionalCapsulesInShardsAfter(
+                afterId, (long) shardCount, shardKeys, PageRequest.of(0, pageSize));
+    }
+
+    /**
+     * Next page of sealed capsules with one of the given condition types
+     * after the given id, limited to the given shards unless clustering is off
+     */
+    public List<CapsuleRepository.ConditionalCapsule> findConditionalCapsulesAfter(
+            Set<Integer> shards, Collection<Capsule.ConditionType> types, Long afterId, int pageSize) {
+        if (!clustered) {
+            return capsuleRepository.findConditionalCapsulesOfTypesAfter(types, afterId, PageRequest.of(0, pageSize));
+        }
+        if (shards.isEmpty()) {
+            return List.of();
+        }
+        List<Long> shardKeys = shards.stream().map(Long::valueOf).toList();
+        return capsuleRepository.findConditionalCapsulesOfTypesInShardsAfter(
+                types, afterId, (long) shardCount, shardKeys, PageRequest.of(0, pageSize));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        if (!clustered) {
+            return;
+        }
+        // Every instance inserts the missing rows; the losers of a race just skip them
+        Set<Integer> existing = leaseRepository.findAll().stream()
+                .map(SchedulerLease::getShard)
+                .collect(Collectors.toSet());
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (!existing.contains(shard)) {
+                try {
+                    leaseRepository.saveAndFlush(SchedulerLease.builder().shard(shard).build());
+                } catch (DataIntegrityViolationException e) {
+                    log.debug("Lease row for shard {} was created by another instance", shard);
+                }
+            }
+        }
+        log.info("Scheduler instance {} joined with {} shards", nodeId, shardCount);
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void heartbeat() {
+        if (!clustered) {
+            return;
+        }
+        try {
+            rebalance();
+        } catch (Exception e) {
+            // Leases not renewed here expire and are taken over by the other instances
+            log.error("Scheduler heartbeat of {} failed", nodeId, e);
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (!clustered) {
+            return;
+        }
+        heartbeats.shutdownNow();
+        try {
+            heartbeats.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Hand the shards back right away rather than letting them expire
+        try {
+            if (!owned.isEmpty()) {
+                leaseRepository.release(nodeId, owned);
+            }
+            nodeRepository.deleteById(nodeId);
+            log.info("Scheduler instance {} released its shards", nodeId);
+        } catch (Exception e) {
+            log.warn("Scheduler instance {} failed to release its shards", nodeId, e);
+        }
+        owned = Set.of();
+    }
+
+    private void rebalance() {
+        LocalDateTime now = databaseTime();
+        Duration leaseTime = Duration.ofMillis(leaseMillis);
+        LocalDateTime expiresAt = now.plus(leaseTime);
+        LocalDateTime cutoff = now.minus(leaseTime);
+
+        nodeRepository.save(SchedulerNode.builder().nodeId(nodeId).heartbeatAt(now).build());
+        leaseRepository.renew(nodeId, expiresAt);
+        long liveNodes = Math.max(1, nodeRepository.countByHeartbeatAtAfter(cutoff));
+        int share = (int) ((shardCount + liveNodes - 1) / liveNodes);
+
+        List<SchedulerLease> leases = leaseRepository.findAll().stream()
+                .filter(lease -> lease.getShard() < shardCount)
+                .toList();
+        TreeSet<Integer> mine = new TreeSet<>();
+        List<Integer> free = new ArrayList<>();
+        for (SchedulerLease lease : leases) {
+            if (nodeId.equals(lease.getOwner())) {
+                mine.add(lease.getShard());
+            } else if (lease.getOwner() == null || lease.getExpiresAt() == null || lease.getExpiresAt().isBefore(now)) {
+                free.add(lease.getShard());
+            }
+        }
+
+        if (mine.size() > share) {
+            List<Integer> surplus = new ArrayList<>(mine.descendingSet()).subList(0, mine.size() - share);
+            leaseRepository.release(nodeId, surplus);
+            surplus.forEach(mine::remove);
+        } else if (mine.size() < share && !free.isEmpty()) {
+            // Instances start looking at different shards, so they rarely compete for the same one
+            Collections.rotate(free, Math.floorMod(nodeId.hashCode(), free.size()));
+            for (Integer shard : free) {
+                if (mine.size() >= share) {
+                    break;
+                }
+                if (leaseRepository.claim(shard, nodeId, expiresAt, now) == 1) {
+                    mine.add(shard);
+                }
+            }
+        }
+
+        // Instances that have been gone for a while no longer need a row
+        nodeRepository.deleteByHeartbeatAtBefore(now.minus(leaseTime.multipliedBy(10)));
+
+        Set<Integer> current = Collections.unmodifiableSet(mine);
+        if (!current.equals(owned)) {
+            owned = current;
+            log.info("Scheduler instance {} owns shards {} of {} ({} live instances)", nodeId, current, shardCount, liveNodes);
+            eventPublisher.publishEvent(new SchedulerShardsChangedEvent(current));
+        }
+    }
+
+    /**
+     * @return The database's current time, which every instance reads the same
+     */
+    private LocalDateTime databaseTime() {
+        return jdbcTemplate.queryForObject("SELECT LOCALTIMESTAMP", LocalDateTime.class);
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,219 @@
+package io.aionios.blockchain;
+
+import io.aionios.event.CapsuleStatusChangedEvent;
+import io.aionios.model.Capsule;
+import io.aionios.model.JobCheckpoint;
+import io.aionios.repository.CapsuleRepository;
+import io.aionios.repository.JobCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainIndexerTest {
+
+    private static final long REORG_DEPTH = 3;
+
+    private final StubChain chain = new StubChain();
+    private final Map<Long, String> blockchainIds = new HashMap<>();
+    private final Map<Long, Capsule.CapsuleStatus> statuses = new HashMap<>();
+    private final Map<String, JobCheckpoint> checkpoints = new HashMap<>();
+    private final List<Object> published = new ArrayList<>();
+
+    private ChainIndexer indexer;
+
+    @BeforeEach
+    void createIndexer() {
+        indexer = new ChainIndexer(chain, capsuleRepository(), checkpointRepository(),
+                new TransactionTemplate(new NoOpTransactionManager()), published::add,
+                true, 0, 1000, REORG_DEPTH);
+    }
+
+    @Test
+    void appliesEventsOnlyOnceTheyAreReorgDepthDeep() throws Exception {
+        capsule(1L, "bc_1", Capsule.CapsuleStatus.SEALED);
+        chain.event(5, "bc_1", Capsule.CapsuleStatus.OPENED);
+
+        chain.head = 7;
+        assertEquals(0, indexer.index());
+        assertEquals(Capsule.CapsuleStatus.SEALED, statuses.get(1L));
+        assertEquals(4L, checkpoints.get(ChainIndexer.CHECKPOINT).getPositionId());
+        assertTrue(published.isEmpty());
+
+        chain.head = 8;
+        assertEquals(1, indexer.index());
+        assertEquals(Capsule.CapsuleStatus.OPENED, statuses.get(1L));
+        assertEquals(5L, checkpoints.get(ChainIndexer.CHECKPOINT).getPositionId());
+        assertEquals(List.of(CapsuleStatusChangedEvent.of(Capsule.CapsuleStatus.OPENED, List.of(1L))), published);
+    }
+
+    @Test
+    void rewindsWhenTheCheckpointedBlockWasReorganized() throws Exception {
+        capsule(1L, "bc_1", Capsule.CapsuleStatus.SEALED);
+
+        chain.head = 10;
+        indexer.index();
+        assertEquals(7L, checkpoints.get(ChainIndexer.CHECKPOINT).getPositionId());
+
+        // A reorg deeper than REORG_DEPTH replaces blocks 6 onwards, and the
+        // new block 6 carries an event for a block that was already indexed
+        chain.reorganizeFrom(6);
+        chain.event(6, "bc_1", Capsule.CapsuleStatus.READY_TO_OPEN);
+        chain.head = 11;
+        chain.ranges.clear();
+
+        assertEquals(1, indexer.index());
+        assertEquals(5L, chain.ranges.get(0)[0]);
+        assertEquals(8L, chain.ranges.get(0)[1]);
+        assertEquals(Capsule.CapsuleStatus.READY_TO_OPEN, statuses.get(1L));
+        assertEquals(8L, checkpoints.get(ChainIndexer.CHECKPOINT).getPositionId());
+        assertEquals(chain.getBlockHash(8), checkpoints.get(ChainIndexer.CHECKPOINT).getMarker());
+    }
+
+    @Test
+    void resumesAfterTheCheckpointWhileItsBlockIsUnchanged() throws Exception {
+        chain.head = 10;
+        indexer.index();
+        chain.head = 12;
+        chain.ranges.clear();
+
+        indexer.index();
+        assertEquals(1, chain.ranges.size());
+        assertEquals(8L, chain.ranges.get(0)[0]);
+        assertEquals(9L, chain.ranges.get(0)[1]);
+    }
+
+    @Test
+    void movesStatusesOnlyForward() throws Exception {
+        capsule(1L, "bc_1", Capsule.CapsuleStatus.OPENED);
+        capsule(2L, "bc_2", Capsule.CapsuleStatus.FAILED);
+        capsule(3L, "bc_3", Capsule.CapsuleStatus.READY_TO_OPEN);
+        chain.event(1, "bc_1", Capsule.CapsuleStatus.SEALED);
+        chain.event(1, "bc_2", Capsule.CapsuleStatus.SEALED);
+        chain.event(2, "bc_3", Capsule.CapsuleStatus.SEALED);
+        chain.event(2, "bc_1", Capsule.CapsuleStatus.READY_TO_OPEN);
+
+        chain.head = 10;
+        assertEquals(1, indexer.index());
+
+        assertEquals(Capsule.CapsuleStatus.OPENED, statuses.get(1L));
+        // A creation given up on locally that still made it on chain
+        assertEquals(Capsule.CapsuleStatus.SEALED, statuses.get(2L));
+        assertEquals(Capsule.CapsuleStatus.READY_TO_OPEN, statuses.get(3L));
+        assertEquals(List.of(CapsuleStatusChangedEvent.of(Capsule.CapsuleStatus.SEALED, List.of(2L))), published);
+    }
+
+    private void capsule(Long id, String blockchainId, Capsule.CapsuleStatus status) {
+        blockchainIds.put(id, blockchainId);
+        statuses.put(id, status);
+    }
+
+    // Backs the queries the indexer runs with the status map, like the
+    // conditional bulk updates of the real repository
+    @SuppressWarnings("unchecked")
+    private CapsuleRepository capsuleRepository() {
+        return (CapsuleRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {CapsuleRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findIdsByBlockchainIds" -> {
+                        Collection<String> ids = (Collection<String>) args[0];
+                        Collection<Capsule.CapsuleStatus> from = (Collection<Capsule.CapsuleStatus>) args[1];
+                        yield blockchainIds.keySet().stream()
+                                .filter(id -> ids.contains(blockchainIds.get(id)) && from.contains(statuses.get(id)))
+                                .sorted()
+                                .toList();
+                    }
+                    case "updateStatus" -> update((Collection<Long>) args[0], (Capsule.CapsuleStatus) args[1]);
+                    case "markOpened" -> update((Collection<Long>) args[0], Capsule.CapsuleStatus.OPENED);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private int update(Collection<Long> ids, Capsule.CapsuleStatus status) {
+        ids.forEach(id -> statuses.put(id, status));
+        return ids.size();
+    }
+
+    private JobCheckpointRepository checkpointRepository() {
+        return (JobCheckpointRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {JobCheckpointRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.ofNullable(checkpoints.get((String) args[0]));
+                    case "save" -> {
+                        JobCheckpoint checkpoint = (JobCheckpoint) args[0];
+                        checkpoints.put(checkpoint.getName(), checkpoint);
+                        yield checkpoint;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Chain of numbered blocks whose hashes change when they are reorganized
+     */
+    private static class StubChain implements ChainEventSource {
+
+        private final List<ChainEvent> events = new ArrayList<>();
+        private final List<long[]> ranges = new ArrayList<>();
+        private long head;
+        private long forkedFrom = Long.MAX_VALUE;
+
+        void event(long blockNumber, String blockchainId, Capsule.CapsuleStatus status) {
+            events.add(new ChainEvent(blockNumber, events.size(), blockchainId, status));
+        }
+
+        void reorganizeFrom(long blockNumber) {
+            forkedFrom = blockNumber;
+            events.removeIf(event -> event.blockNumber() >= blockNumber);
+        }
+
+        @Override
+        public long getLatestBlockNumber() {
+            return head;
+        }
+
+        @Override
+        public String getBlockHash(long blockNumber) {
+            if (blockNumber > head) {
+                return null;
+            }
+            return (blockNumber >= forkedFrom ? "0xfork" : "0x") + blockNumber;
+        }
+
+        @Override
+        public List<ChainEvent> getEvents(long fromBlock, long toBlock) {
+            ranges.add(new long[] {fromBlock, toBlock});
+            return events.stream()
+                    .filter(event -> event.blockNumber() >= fromBlock && event.blockNumber() <= toBlock)
+                    .toList();
+        }
+    }
+
+    private static class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
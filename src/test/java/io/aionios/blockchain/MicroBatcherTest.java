@@ -0,0 +1,98 @@
+package io.aionios.blockchain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MicroBatcherTest {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private MicroBatcher<String, String> batcher;
+
+    @AfterEach
+    void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    @Test
+    void flushesABatchOnceItIsFull() throws Exception {
+        // The delay is far longer than the test, so only the size can flush
+        batcher = batcher(3, 60_000, batch -> batch.stream().map(String::toUpperCase).toList());
+
+        CompletableFuture<String> a = batcher.submit("a");
+        CompletableFuture<String> b = batcher.submit("b");
+        CompletableFuture<String> c = batcher.submit("c");
+
+        assertEquals("A", a.get(5, TimeUnit.SECONDS));
+        assertEquals("B", b.get(5, TimeUnit.SECONDS));
+        assertEquals("C", c.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("a", "b", "c")), batches);
+    }
+
+    @Test
+    void flushesAPartialBatchAfterTheMaxDelay() throws Exception {
+        batcher = batcher(100, 50, batch -> batch);
+
+        assertEquals("a", batcher.submit("a").get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("a")), batches);
+    }
+
+    @Test
+    void failsEveryItemOfAFailedBatch() {
+        IllegalStateException failure = new IllegalStateException("rejected");
+        batcher = batcher(2, 60_000, batch -> {
+            throw failure;
+        });
+
+        CompletableFuture<String> a = batcher.submit("a");
+        CompletableFuture<String> b = batcher.submit("b");
+
+        assertEquals(failure, assertThrows(ExecutionException.class, () -> a.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(failure, assertThrows(ExecutionException.class, () -> b.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    @Test
+    void failsABatchWithTheWrongNumberOfResults() {
+        batcher = batcher(2, 60_000, batch -> List.of("only one"));
+
+        CompletableFuture<String> a = batcher.submit("a");
+        batcher.submit("b");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> a.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void failsItemsSubmittedAfterClose() {
+        batcher = batcher(2, 60_000, batch -> batch);
+        CompletableFuture<String> pending = batcher.submit("a");
+
+        batcher.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> pending.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertInstanceOf(IllegalStateException.class,
+                assertThrows(ExecutionException.class, () -> batcher.submit("b").get()).getCause());
+        assertEquals(List.of(), batches);
+    }
+
+    private MicroBatcher<String, String> batcher(int maxBatchSize, long maxDelayMillis,
+                                                 MicroBatcher.BatchHandler<String, String> handler) {
+        return new MicroBatcher<>("test", maxBatchSize, maxDelayMillis, 2, batch -> {
+            batches.add(List.copyOf(batch));
+            return handler.handle(batch);
+        }, Executors.defaultThreadFactory());
+    }
+}
@@ -0,0 +1,92 @@
+package io.aionios.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaderboardTest {
+
+    private final Leaderboard<String> board = new Leaderboard<>(3);
+
+    @Test
+    void ranksByScoreThenByTheHigherId() {
+        board.update(1, 10, "a");
+        board.update(2, 20, "b");
+        board.update(3, 10, "c");
+
+        assertEquals(List.of("b", "c", "a"), board.snapshot().values());
+    }
+
+    @Test
+    void dropsValuesThatRankBelowAFullBoard() {
+        board.update(1, 10, "a");
+        board.update(2, 20, "b");
+        board.update(3, 30, "c");
+
+        assertFalse(board.update(4, 5, "d"));
+        assertFalse(board.contains(4));
+
+        assertTrue(board.update(5, 15, "e"));
+        assertFalse(board.contains(1));
+        assertEquals(3, board.size());
+        assertEquals(List.of("c", "b", "e"), board.snapshot().values());
+    }
+
+    @Test
+    void movesAnUpdatedEntryToItsNewRank() {
+        board.update(1, 10, "a");
+        board.update(2, 20, "b");
+        board.update(3, 30, "c");
+
+        assertTrue(board.update(1, 40, "a2"));
+        assertEquals(List.of("a2", "c", "b"), board.snapshot().values());
+
+        // An entry on a full board may also drop to last place
+        assertTrue(board.update(3, 1, "c2"));
+        assertEquals(List.of("a2", "b", "c2"), board.snapshot().values());
+    }
+
+    @Test
+    void rebuildsTheSnapshotOnlyAfterAChange() {
+        board.update(1, 10, "a");
+        Leaderboard.Snapshot<String> first = board.snapshot();
+        assertSame(first, board.snapshot());
+
+        board.update(2, 20, "b");
+        Leaderboard.Snapshot<String> second = board.snapshot();
+        assertNotSame(first, second);
+        assertTrue(second.version() > first.version());
+        assertEquals(List.of("a"), first.values());
+        assertThrows(UnsupportedOperationException.class, () -> second.values().add("c"));
+    }
+
+    @Test
+    void removeAndResetReplaceTheBoard() {
+        board.update(1, 10, "a");
+        board.update(2, 20, "b");
+
+        assertTrue(board.remove(1));
+        assertFalse(board.remove(1));
+        assertEquals(List.of("b"), board.snapshot().values());
+
+        Map<Long, Long> scores = new LinkedHashMap<>();
+        scores.put(7L, 70L);
+        scores.put(8L, 80L);
+        scores.put(9L, 5L);
+        scores.put(10L, 90L);
+        board.reset(scores, Map.of(7L, "g", 8L, "h", 9L, "i", 10L, "j"));
+
+        assertFalse(board.contains(2));
+        assertFalse(board.contains(9));
+        assertEquals(List.of("j", "h", "g"), board.snapshot().values());
+    }
+}
@@ -0,0 +1,96 @@
+package io.aionios.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeightedLruCacheTest {
+
+    private final List<Map.Entry<String, String>> evicted = new ArrayList<>();
+    private final WeightedLruCache<String, String> cache =
+            new WeightedLruCache<>(10, String::length, (key, value) -> evicted.add(Map.entry(key, value)));
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntriesUntilTheWeightFits() {
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.get("a");
+        cache.put("c", "ccc");
+
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("c"));
+        assertEquals(7, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(List.of(Map.entry("b", "bbbb")), evicted);
+    }
+
+    @Test
+    void evictsAsManyEntriesAsAHeavyValueNeeds() {
+        cache.put("a", "aaa");
+        cache.put("b", "bbb");
+        cache.put("c", "ccc");
+        cache.put("d", "dddddddd");
+
+        assertEquals(List.of("a", "b", "c"), evicted.stream().map(Map.Entry::getKey).toList());
+        assertEquals(1, cache.size());
+        assertEquals(8, cache.getWeight());
+    }
+
+    @Test
+    void replacingAnEntryReweighsItAndReleasesTheOldValue() {
+        cache.put("a", "aa");
+        cache.put("a", "aaaaa");
+
+        assertEquals("aaaaa", cache.get("a"));
+        assertEquals(5, cache.getWeight());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(List.of(Map.entry("a", "aa")), evicted);
+    }
+
+    @Test
+    void doesNotStoreAValueHeavierThanTheWholeCache() {
+        cache.put("a", "aaa");
+        cache.put("big", "bbbbbbbbbbb");
+
+        assertFalse(cache.containsKey("big"));
+        assertTrue(cache.containsKey("a"));
+        assertEquals(3, cache.getWeight());
+        assertEquals(List.of(Map.entry("big", "bbbbbbbbbbb")), evicted);
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        cache.put("a", "a");
+        cache.get("a");
+        cache.get("a");
+        assertNull(cache.get("b"));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void removeAndClearReleaseTheirEntries() {
+        cache.put("a", "aa");
+        cache.put("b", "bb");
+        cache.put("c", "cc");
+
+        assertEquals("aa", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(4, cache.getWeight());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertEquals(List.of("a", "b", "c"), evicted.stream().map(Map.Entry::getKey).toList());
+        assertEquals(0, cache.getEvictionCount());
+    }
+}
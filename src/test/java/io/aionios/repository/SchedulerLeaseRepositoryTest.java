@@ -0,0 +1,107 @@
+package io.aionios.repository;
+
+import io.aionios.model.SchedulerLease;
+import io.aionios.model.SchedulerNode;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DataJpaTest
+class SchedulerLeaseRepositoryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private SchedulerLeaseRepository leaseRepository;
+
+    @Autowired
+    private SchedulerNodeRepository nodeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void createShards() {
+        for (int shard = 0; shard < 2; shard++) {
+            leaseRepository.save(SchedulerLease.builder().shard(shard).build());
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void claimTakesAFreeShard() {
+        assertEquals(1, leaseRepository.claim(0, "node-a", NOW.plusSeconds(30), NOW));
+
+        SchedulerLease lease = reload(0);
+        assertEquals("node-a", lease.getOwner());
+        assertEquals(NOW.plusSeconds(30), lease.getExpiresAt());
+    }
+
+    @Test
+    void claimLeavesALiveLeaseOfAnotherNode() {
+        leaseRepository.claim(0, "node-a", NOW.plusSeconds(30), NOW);
+
+        assertEquals(0, leaseRepository.claim(0, "node-b", NOW.plusSeconds(40), NOW.plusSeconds(10)));
+        assertEquals("node-a", reload(0).getOwner());
+    }
+
+    @Test
+    void renewExtendsOnlyTheLeasesOfTheOwner() {
+        leaseRepository.claim(0, "node-a", NOW.plusSeconds(30), NOW);
+        leaseRepository.claim(1, "node-b", NOW.plusSeconds(30), NOW);
+
+        assertEquals(1, leaseRepository.renew("node-a", NOW.plusSeconds(60)));
+
+        assertEquals(NOW.plusSeconds(60), reload(0).getExpiresAt());
+        assertEquals(NOW.plusSeconds(30), reload(1).getExpiresAt());
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverByAnotherNode() {
+        leaseRepository.claim(0, "node-a", NOW.plusSeconds(30), NOW);
+        nodeRepository.save(SchedulerNode.builder().nodeId("node-a").heartbeatAt(NOW).build());
+        nodeRepository.save(SchedulerNode.builder().nodeId("node-b").heartbeatAt(NOW.plusSeconds(45)).build());
+        entityManager.flush();
+
+        // node-a stopped renewing; once its lease has expired node-b claims the shard
+        LocalDateTime later = NOW.plusSeconds(45);
+        assertEquals(1, leaseRepository.claim(0, "node-b", later.plusSeconds(30), later));
+        assertEquals("node-b", reload(0).getOwner());
+
+        // The old owner can neither renew nor release the shard it lost
+        assertEquals(0, leaseRepository.renew("node-a", later.plusSeconds(30)));
+        assertEquals(0, leaseRepository.release("node-a", List.of(0)));
+        assertEquals("node-b", reload(0).getOwner());
+
+        assertEquals(1, nodeRepository.countByHeartbeatAtAfter(later.minusSeconds(30)));
+        assertEquals(1, nodeRepository.deleteByHeartbeatAtBefore(later.minusSeconds(30)));
+        assertEquals(List.of("node-b"), nodeRepository.findAll().stream().map(SchedulerNode::getNodeId).toList());
+    }
+
+    @Test
+    void releaseFreesTheShardForAnyNode() {
+        leaseRepository.claim(0, "node-a", NOW.plusSeconds(30), NOW);
+
+        assertEquals(1, leaseRepository.release("node-a", List.of(0)));
+        SchedulerLease lease = reload(0);
+        assertNull(lease.getOwner());
+        assertNull(lease.getExpiresAt());
+
+        assertEquals(1, leaseRepository.claim(0, "node-b", NOW.plusSeconds(30), NOW));
+    }
+
+    // Bulk updates bypass the persistence context, so read the row again
+    private SchedulerLease reload(int shard) {
+        entityManager.flush();
+        entityManager.clear();
+        return leaseRepository.findById(shard).orElseThrow();
+    }
+}
@@ -0,0 +1,81 @@
+package io.aionios.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void firesAnItemAtTheEndOfTheTickItIsDueIn() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        assertTrue(wheel.add("a", 25));
+
+        assertEquals(List.of(), wheel.advance(29));
+        assertEquals(List.of("a"), wheel.advance(30));
+        assertEquals(List.of(), wheel.advance(100));
+    }
+
+    @Test
+    void rejectsItemsThatAreAlreadyDue() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 100);
+
+        assertFalse(wheel.add("past", 50));
+        assertFalse(wheel.add("now", 100));
+        assertTrue(wheel.add("next", 101));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void cascadesItemsBeyondTheSpanOfTheFinestWheel() {
+        // The finest wheel spans 40 ms, so these land on two coarser wheels
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+        wheel.add("near", 35);
+        wheel.add("far", 75);
+        wheel.add("farther", 1234);
+        assertEquals(3, wheel.size());
+
+        assertEquals(List.of("near"), wheel.advance(40));
+        assertEquals(List.of(), wheel.advance(79));
+        assertEquals(List.of("far"), wheel.advance(80));
+        assertEquals(List.of(), wheel.advance(1239));
+        assertEquals(List.of("farther"), wheel.advance(1240));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void firesEveryItemOnceNoEarlierThanDueAndAtMostOneTickLate() {
+        long tick = 10;
+        TimingWheel<Integer> wheel = new TimingWheel<>(tick, 16, 0);
+        Random random = new Random(1);
+        Map<Integer, Long> due = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long dueMillis = 1 + random.nextInt(50_000);
+            due.put(i, dueMillis);
+            wheel.add(i, dueMillis);
+        }
+
+        Map<Integer, Long> fired = new HashMap<>();
+        for (long now = 0; now <= 50_010; now += 1 + random.nextInt(3)) {
+            for (Integer item : wheel.advance(now)) {
+                assertEquals(null, fired.put(item, now));
+            }
+        }
+
+        assertEquals(due.keySet(), fired.keySet());
+        assertEquals(0, wheel.size());
+        for (Map.Entry<Integer, Long> entry : due.entrySet()) {
+            long firedAt = fired.get(entry.getKey());
+            assertTrue(firedAt >= entry.getValue(), "item " + entry.getKey() + " fired early");
+            // One tick of rounding plus the step the clock jumped by
+            assertTrue(firedAt < entry.getValue() + tick + 3, "item " + entry.getKey() + " fired late");
+        }
+    }
+}
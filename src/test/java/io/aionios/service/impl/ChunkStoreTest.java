@@ -0,0 +1,128 @@
+package io.aionios.service.impl;
+
+import io.ipfs.multihash.Multihash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesContentAcrossChunksAndSegments() throws IOException {
+        byte[] content = randomBytes(100);
+        try (ChunkStore store = new ChunkStore(16, 32, null)) {
+            String hash = store.put(new ByteArrayInputStream(content));
+
+            assertTrue(store.contains(hash));
+            assertEquals(100, store.size(hash));
+            assertArrayEquals(content, store.read(hash));
+            assertEquals(7, store.getChunkCount());
+        }
+    }
+
+    @Test
+    void addressesContentByItsSha256Multihash() throws Exception {
+        byte[] content = randomBytes(40);
+        try (ChunkStore store = new ChunkStore(16, 64, null)) {
+            String expected = new Multihash(Multihash.Type.sha2_256,
+                    MessageDigest.getInstance("SHA-256").digest(content)).toBase58();
+
+            assertEquals(expected, store.put(new ByteArrayInputStream(content)));
+        }
+    }
+
+    @Test
+    void readsRangesWithoutTheWholeBlob() throws IOException {
+        byte[] content = randomBytes(100);
+        try (ChunkStore store = new ChunkStore(16, 64, null)) {
+            String hash = store.put(new ByteArrayInputStream(content));
+
+            assertArrayEquals(Arrays.copyOfRange(content, 10, 40), readAll(store.open(hash, 10, 30)));
+            assertArrayEquals(Arrays.copyOfRange(content, 90, 100), readAll(store.open(hash, 90, -1)));
+            assertArrayEquals(Arrays.copyOfRange(content, 95, 100), readAll(store.open(hash, 95, 50)));
+            assertArrayEquals(new byte[0], readAll(store.open(hash, 100, -1)));
+            assertThrows(IOException.class, () -> store.open(hash, 101, -1));
+            assertThrows(FileNotFoundException.class, () -> store.open("missing", 0, -1));
+        }
+    }
+
+    @Test
+    void storesIdenticalChunksOnce() throws IOException {
+        byte[] repeated = new byte[48];
+        Arrays.fill(repeated, (byte) 'a');
+        byte[] extended = Arrays.copyOf(repeated, 64);
+        Arrays.fill(extended, 48, 64, (byte) 'b');
+
+        try (ChunkStore store = new ChunkStore(16, 64, null)) {
+            String first = store.put(new ByteArrayInputStream(repeated));
+            assertEquals(first, store.put(new ByteArrayInputStream(repeated)));
+            store.put(new ByteArrayInputStream(extended));
+
+            assertEquals(2, store.getChunkCount());
+            assertEquals(32, store.getStoredBytes());
+            assertEquals(48 + 64, store.getLogicalBytes());
+            assertArrayEquals(extended, store.read(store.put(new ByteArrayInputStream(extended))));
+        }
+    }
+
+    @Test
+    void storesEmptyContent() throws IOException {
+        try (ChunkStore store = new ChunkStore(16, 64, null)) {
+            String hash = store.put(new ByteArrayInputStream(new byte[0]));
+
+            assertEquals(0, store.size(hash));
+            assertArrayEquals(new byte[0], store.read(hash));
+        }
+    }
+
+    @Test
+    void keepsMemoryMappedSegmentsOnlyWhileOpen() throws IOException {
+        byte[] content = randomBytes(100);
+        ChunkStore store = new ChunkStore(16, 32, directory);
+        String hash = store.put(new ByteArrayInputStream(content));
+        assertArrayEquals(content, store.read(hash));
+        try (var segments = Files.list(directory)) {
+            assertEquals(4, segments.count());
+        }
+
+        store.close();
+        try (var segments = Files.list(directory)) {
+            assertFalse(segments.findAny().isPresent());
+        }
+    }
+
+    @Test
+    void rejectsSegmentsSmallerThanAChunk() {
+        assertThrows(IllegalArgumentException.class, () -> new ChunkStore(64, 32, null));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+}